@@ -4,24 +4,30 @@ import com.google.common.collect.Lists;
 import com.mapr.stats.bandit.BanditFactory;
 import com.mapr.stats.bandit.BayesianBandit;
 import com.mapr.stats.bandit.BetaBayesFactory;
+import com.mapr.stats.bandit.CompactBetaBayesFactory;
+import com.mapr.stats.bandit.FloatBetaBayesFactory;
 import com.mapr.stats.bandit.GammaNormalBayesFactory;
+import com.mapr.stats.io.ResultSink;
 import com.mapr.stats.random.AbstractBayesianDistribution;
-import org.apache.mahout.common.RandomUtils;
-import org.apache.mahout.math.jet.random.Uniform;
 
-import java.io.FileNotFoundException;
-import java.io.PrintWriter;
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * Implements a Bandit ranking.
  */
 public class BanditRanking {
-    private static Random gen = RandomUtils.getRandom();
+    // samples per item are reported for this many instances
+    private static final int SAMPLE_INSTANCES = 10;
 
-    public static void main(String[] args) throws FileNotFoundException {
+    public static void main(String[] args) throws IOException, InterruptedException {
         int keyItems = 10, pageSize = 20, totalItems = 200;
 
         if (args.length > 0) {
@@ -42,69 +48,164 @@ public class BanditRanking {
                 bf = new BetaBayesFactory();
             } else if (args[3].startsWith("gamma")) {
                 bf = new GammaNormalBayesFactory();
+            } else if (args[3].startsWith("compact")) {
+                bf = new CompactBetaBayesFactory();
+            } else if (args[3].startsWith("float")) {
+                bf = new FloatBetaBayesFactory();
             } else {
-                throw new IllegalArgumentException("Wanted beta or gamma to specify distribution");
+                throw new IllegalArgumentException("Wanted beta, gamma, compact or float to specify distribution");
             }
         }
 
-        List<BayesianBandit> bandit = Lists.newArrayList();
-        for (int m = 0; m < 50; m++) {
-            bandit.add(bf.createBandit(totalItems, gen));
+        int instances = args.length > 4 ? Integer.parseInt(args[4]) : 50;
+        int rounds = args.length > 5 ? Integer.parseInt(args[5]) : 1000;
+        long seed = args.length > 6 ? Long.parseLong(args[6]) : 1;
+        int threads = args.length > 7 ? Integer.parseInt(args[7]) : Runtime.getRuntime().availableProcessors();
+
+        Simulation sim = simulate(bf, keyItems, pageSize, totalItems, instances, rounds, seed, threads);
+
+        double cumulativeRegret = 0;
+        try (ResultSink quality = ResultSink.open("quality.csv", "Trials", "Precision", "Regret", "CumulativeRegret")) {
+            for (int i = 0; i < rounds; i++) {
+                cumulativeRegret += sim.regret[i];
+                quality.add(i + 1).add(sim.precision[i] * 100, 1).add(sim.regret[i], 3).add(cumulativeRegret, 3).endRow();
+            }
         }
 
-        double[] prob = new double[totalItems];
-        Uniform u = new Uniform(gen);
+        // display samples per rank
+        try (ResultSink samples = ResultSink.open("samples.csv", "Rank", "Samples")) {
+            for (double[] counts : sim.samples) {
+                for (int i = 0; i < counts.length; i++) {
+                    samples.add(i).add(counts[i], 1).endRow();
+                }
+            }
+        }
+    }
+
+    /**
+     * Runs many independent ranking simulations in parallel.
+     * <p/>
+     * All instances rank the same items whose qualities are drawn uniformly at random.  In each
+     * round, every instance shows a page of items and each item on the page is rated according to
+     * its quality.  Each instance has its own random number generator seeded from the master seed
+     * and the instance number.  Results for each round are combined over instances in the same
+     * order every time so the results depend only on the seed and not on the number of threads.
+     *
+     * @param bf         How to create the model for each instance.
+     * @param keyItems   How many of the best items count towards precision.
+     * @param pageSize   How many items are shown in each round.
+     * @param totalItems How many items there are.
+     * @param instances  How many independent simulations to run.
+     * @param rounds     How many pages each simulation shows.
+     * @param seed       The master seed.
+     * @param threads    How many threads to use.
+     * @return The precision and regret for each round averaged over all instances, and the number
+     * of samples for each item in the first few instances.
+     */
+    public static Simulation simulate(final BanditFactory bf, final int keyItems, final int pageSize, final int totalItems,
+                                      int instances, final int rounds, long seed, int threads) throws InterruptedException {
+        Random gen = new Random(seed);
+        final double[] prob = new double[totalItems];
         for (int j = 0; j < totalItems; j++) {
-            prob[j] = u.nextDouble();
+            prob[j] = gen.nextDouble();
         }
         Arrays.sort(prob);
         for (int j = 0; j < totalItems; j++) {
             prob[j] = 1 - prob[j];
         }
 
-        double cumulativeRegret = 0;
-        PrintWriter quality = new PrintWriter("quality.csv");
-        quality.printf("Trials,Precision,Regret,CumulativeRegret\n");
-        for (int i = 0; i < 1000; i++) {
-
-            double precision = 0;
-            double regret = 0;
-            for (int m = 0; m < 50; m++) {
-                List<Integer> page = bandit.get(m).rank(pageSize);
-                for (Integer item : page) {
-                    if (item < keyItems) {
-                        precision++;
-                    }
-                }
+        final double[][] precision = new double[instances][rounds];
+        final double[][] regret = new double[instances][rounds];
+        final List<double[]> samples = Lists.newArrayList();
+        for (int m = 0; m < Math.min(SAMPLE_INSTANCES, instances); m++) {
+            samples.add(new double[totalItems]);
+        }
 
-                for (int j = 0; j < pageSize; j++) {
-                    int k = page.get(j);
-                    regret += prob[j] - prob[k];
+        List<Callable<Object>> tasks = Lists.newArrayList();
+        for (int m = 0; m < instances; m++) {
+            final int instance = m;
+            final long instanceSeed = gen.nextLong();
+            tasks.add(new Callable<Object>() {
+                @Override
+                public Object call() {
+                    Random rand = new Random(instanceSeed);
+                    BayesianBandit bandit = bf.createBandit(totalItems, rand);
+                    for (int i = 0; i < rounds; i++) {
+                        List<Integer> page = bandit.rank(pageSize);
+                        int hits = 0;
+                        double loss = 0;
+                        for (int j = 0; j < page.size(); j++) {
+                            int k = page.get(j);
+                            if (k < keyItems) {
+                                hits++;
+                            }
+                            loss += prob[j] - prob[k];
+                        }
+                        for (int k : page) {
+                            bandit.train(k, rand.nextDouble() < prob[k] ? 1 : 0);
+                        }
+                        precision[instance][i] = hits;
+                        regret[instance][i] = loss;
+                    }
+                    if (instance < samples.size()) {
+                        int k = 0;
+                        for (AbstractBayesianDistribution distribution : bandit) {
+                            samples.get(instance)[k++] = distribution.getSamples();
+                        }
+                    }
+                    return null;
                 }
+            });
+        }
 
-                for (int j = 0; j < pageSize; j++) {
-                    int k = page.get(j);
-                    int reward = u.nextDouble() < prob[k] ? 1 : 0;
-                    bandit.get(m).train(k, reward);
+        ExecutorService ex = Executors.newFixedThreadPool(threads);
+        try {
+            for (Future<Object> result : ex.invokeAll(tasks)) {
+                try {
+                    result.get();
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("Simulation failed", e.getCause());
                 }
             }
-            precision /= keyItems * 50.0;
-            regret /= 50;
-            cumulativeRegret += regret;
-
-            quality.printf("%d,%.1f,%.3f,%.3f\n", i + 1, precision * 100, regret, cumulativeRegret);
+        } finally {
+            ex.shutdown();
         }
-        quality.close();
 
-        // display samples per rank
-        PrintWriter samples = new PrintWriter("samples.csv");
-        samples.printf("Rank,Samples\n");
-        for (int m = 0; m < 10; m++) {
-            int i = 0;
-            for (AbstractBayesianDistribution distribution : bandit.get(m)) {
-                samples.printf("%d,%.1f\n", i++, distribution.getSamples());
+        Simulation r = new Simulation(rounds, samples);
+        for (int i = 0; i < rounds; i++) {
+            for (int m = 0; m < instances; m++) {
+                r.precision[i] += precision[m][i];
+                r.regret[i] += regret[m][i];
             }
+            r.precision[i] /= (double) keyItems * instances;
+            r.regret[i] /= instances;
+        }
+        return r;
+    }
+
+    /**
+     * The results of {@link #simulate}.
+     */
+    public static class Simulation {
+        /**
+         * The fraction of the key items shown on the page in each round, averaged over instances.
+         */
+        public final double[] precision;
+
+        /**
+         * The regret of the page shown in each round, averaged over instances.
+         */
+        public final double[] regret;
+
+        /**
+         * For each of the first few instances, the number of samples of each item at the end.
+         */
+        public final List<double[]> samples;
+
+        private Simulation(int rounds, List<double[]> samples) {
+            precision = new double[rounds];
+            regret = new double[rounds];
+            this.samples = samples;
         }
-        samples.close();
     }
 }
@@ -0,0 +1,483 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mapr.bandit;
+
+import com.google.common.collect.Lists;
+import com.mapr.stats.bandit.BanditFactory;
+import com.mapr.stats.bandit.BayesianBandit;
+import com.mapr.stats.bandit.ExperimentMatrix;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hammers a single shared bandit with reader threads that call {@link BayesianBandit#rank(int)}
+ * and writer threads that call {@link BayesianBandit#train(int, double)} to see how a solver
+ * behaves under contention.
+ * <p/>
+ * Each thread runs a closed loop, issuing its next call only when the previous one returns.  If a
+ * rate is given, each thread tries to start calls on a fixed schedule.  Latency is then measured
+ * from when a call should have started rather than when it did, so that a stall that delays
+ * the calls queued up behind it is charged to all of them instead of only to the one call that
+ * stalled.  Without this correction for coordinated omission, a closed loop generator
+ * under-reports high percentiles badly.  The time spent inside each call is recorded separately
+ * as the service time.  Without a rate, threads run flat out and the two measurements are the same.
+ * <p/>
+ * Writers pick arms with Zipfian popularity so that a few arms get most of the updates, as is
+ * usual with real traffic.  Rewards are Bernoulli with a fixed probability for each arm.
+ * <p/>
+ * Most solvers are not thread-safe.  By default every call is made while holding a lock on the
+ * bandit.  Locking can be turned off to measure a solver that does its own synchronization, in
+ * which case any exceptions thrown are counted as errors.
+ * <pre>
+ *     LoadGenerator [model [arms [readers [writers [seconds [rate [page [zipf [lock]]]]]]]]]
+ * </pre>
+ * The model is described the same way as factories in {@link ExperimentMatrix}.  The rate is in
+ * calls per second for each thread with 0 meaning as fast as possible.  The lock argument is
+ * <code>sync</code> or <code>none</code>.
+ */
+public class LoadGenerator {
+    private final BanditFactory factory;
+    private final int arms;
+    private final long seed;
+
+    private int readers = 4;
+    private int writers = 1;
+    private int pageSize = 20;
+    private double zipf = 1;
+    private double rate = 0;
+    private long durationMillis = 10000;
+    private long intervalMillis = 1000;
+    private boolean locked = true;
+
+    private volatile boolean stop;
+
+    public static void main(String[] args) throws InterruptedException {
+        BanditFactory factory = ExperimentMatrix.factory(args.length > 0 ? args[0] : "beta");
+        int arms = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+
+        LoadGenerator load = new LoadGenerator(factory, arms, 1);
+        if (args.length > 2) {
+            load.setReaders(Integer.parseInt(args[2]));
+        }
+        if (args.length > 3) {
+            load.setWriters(Integer.parseInt(args[3]));
+        }
+        if (args.length > 4) {
+            load.setDuration((long) (Double.parseDouble(args[4]) * 1000));
+        }
+        if (args.length > 5) {
+            load.setRate(Double.parseDouble(args[5]));
+        }
+        if (args.length > 6) {
+            load.setPageSize(Integer.parseInt(args[6]));
+        }
+        if (args.length > 7) {
+            load.setZipf(Double.parseDouble(args[7]));
+        }
+        if (args.length > 8) {
+            if (!args[8].equals("sync") && !args[8].equals("none")) {
+                throw new IllegalArgumentException("Lock should be sync or none, not " + args[8]);
+            }
+            load.setLocked(args[8].equals("sync"));
+        }
+
+        load.run(System.out).print(System.out);
+    }
+
+    /**
+     * @param factory How to build the shared bandit.
+     * @param arms    How many arms the bandit has.
+     * @param seed    Seed for the bandit, the arm probabilities and each thread's generator.
+     */
+    public LoadGenerator(BanditFactory factory, int arms, long seed) {
+        this.factory = factory;
+        this.arms = arms;
+        this.seed = seed;
+    }
+
+    public void setReaders(int readers) {
+        this.readers = readers;
+    }
+
+    public void setWriters(int writers) {
+        this.writers = writers;
+    }
+
+    /**
+     * Sets how many arms readers ask for in each call to rank.
+     */
+    public void setPageSize(int pageSize) {
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Sets the exponent for arm popularity.  Arm \(i\) is trained with probability proportional to
+     * \( (i+1)^{-s} \) so 0 gives uniform popularity.
+     */
+    public void setZipf(double zipf) {
+        this.zipf = zipf;
+    }
+
+    /**
+     * Sets the target number of calls per second for each thread, or 0 to run as fast as possible.
+     */
+    public void setRate(double rate) {
+        this.rate = rate;
+    }
+
+    public void setDuration(long millis) {
+        this.durationMillis = millis;
+    }
+
+    /**
+     * Sets how often latency percentiles are reported.
+     */
+    public void setReportInterval(long millis) {
+        this.intervalMillis = millis;
+    }
+
+    /**
+     * Sets whether calls are made while holding a lock on the bandit.
+     */
+    public void setLocked(boolean locked) {
+        this.locked = locked;
+    }
+
+    /**
+     * Runs the load test.
+     *
+     * @param progress Where to print a line for each reporting interval, or null for no output.
+     * @return The results for each interval and overall.
+     */
+    public Report run(PrintStream progress) throws InterruptedException {
+        Random gen = new Random(seed);
+        BayesianBandit bandit = factory.createBandit(arms, new Random(gen.nextLong()));
+        double[] p = new double[arms];
+        for (int i = 0; i < arms; i++) {
+            p[i] = gen.nextDouble() * 0.2;
+        }
+        ZipfSampler popularity = new ZipfSampler(arms, zipf);
+        long period = rate > 0 ? (long) (1e9 / rate) : 0;
+
+        stop = false;
+        List<Worker> workers = Lists.newArrayList();
+        for (int i = 0; i < readers + writers; i++) {
+            workers.add(new Worker(i < readers, bandit, p, popularity, period, new Random(gen.nextLong())));
+        }
+
+        Report report = new Report();
+        if (progress != null) {
+            Report.printHeader(progress);
+        }
+
+        long start = System.nanoTime();
+        report.lastTime = start;
+        for (Worker w : workers) {
+            w.start(start);
+        }
+        try {
+            long end = start + durationMillis * 1000000L;
+            long next = start;
+            while (next < end) {
+                next = Math.min(end, next + intervalMillis * 1000000L);
+                long now;
+                while ((now = System.nanoTime()) < next) {
+                    Thread.sleep(Math.max(1, (next - now) / 1000000L));
+                }
+                Interval x = new Interval((now - start) * 1e-9, (now - report.lastTime) * 1e-9);
+                report.lastTime = now;
+                for (Worker w : workers) {
+                    x.merge(w.recorder.take());
+                }
+                report.add(x);
+                if (progress != null) {
+                    x.print(progress);
+                }
+            }
+        } finally {
+            stop = true;
+            for (Worker w : workers) {
+                w.thread.join();
+            }
+        }
+        return report;
+    }
+
+    /**
+     * One reader or writer.
+     */
+    private class Worker implements Runnable {
+        private final boolean reader;
+        private final BayesianBandit bandit;
+        private final double[] p;
+        private final ZipfSampler popularity;
+        private final long period;
+        private final Random gen;
+        private final Recorder recorder = new Recorder();
+        private final Thread thread;
+        private long start;
+
+        private Worker(boolean reader, BayesianBandit bandit, double[] p, ZipfSampler popularity, long period, Random gen) {
+            this.reader = reader;
+            this.bandit = bandit;
+            this.p = p;
+            this.popularity = popularity;
+            this.period = period;
+            this.gen = gen;
+            this.thread = new Thread(this, reader ? "reader" : "writer");
+            thread.setDaemon(true);
+        }
+
+        private void start(long start) {
+            this.start = start;
+            thread.start();
+        }
+
+        @Override
+        public void run() {
+            long next = start;
+            while (!stop) {
+                long intended;
+                if (period > 0) {
+                    long now;
+                    while ((now = System.nanoTime()) < next) {
+                        LockSupport.parkNanos(next - now);
+                    }
+                    intended = next;
+                    next += period;
+                } else {
+                    intended = System.nanoTime();
+                }
+
+                long t0 = System.nanoTime();
+                boolean ok = true;
+                try {
+                    if (reader) {
+                        if (locked) {
+                            synchronized (bandit) {
+                                bandit.rank(pageSize);
+                            }
+                        } else {
+                            bandit.rank(pageSize);
+                        }
+                    } else {
+                        int arm = popularity.sample(gen);
+                        double reward = gen.nextDouble() < p[arm] ? 1 : 0;
+                        if (locked) {
+                            synchronized (bandit) {
+                                bandit.train(arm, reward);
+                            }
+                        } else {
+                            bandit.train(arm, reward);
+                        }
+                    }
+                } catch (RuntimeException e) {
+                    ok = false;
+                }
+                long t1 = System.nanoTime();
+                recorder.record(reader, t1 - intended, t1 - t0, ok);
+            }
+        }
+    }
+
+    /**
+     * Collects one thread's measurements for the current interval.  The owning thread and the
+     * reporting thread only meet in the uncontended monitor, which costs far less than the calls
+     * being measured.
+     */
+    private static class Recorder {
+        private Interval current = new Interval(0, 0);
+
+        synchronized void record(boolean reader, long latency, long service, boolean ok) {
+            current.record(reader, latency, service, ok);
+        }
+
+        synchronized Interval take() {
+            Interval r = current;
+            current = new Interval(0, 0);
+            return r;
+        }
+    }
+
+    /**
+     * The measurements for one reporting interval.  Times are in nanoseconds.
+     */
+    public static class Interval {
+        private final double time;
+        private final double seconds;
+        private final LatencyHistogram rankLatency = new LatencyHistogram();
+        private final LatencyHistogram rankService = new LatencyHistogram();
+        private final LatencyHistogram trainLatency = new LatencyHistogram();
+        private final LatencyHistogram trainService = new LatencyHistogram();
+        private long errors = 0;
+
+        private Interval(double time, double seconds) {
+            this.time = time;
+            this.seconds = seconds;
+        }
+
+        private void record(boolean reader, long latency, long service, boolean ok) {
+            if (reader) {
+                rankLatency.record(latency);
+                rankService.record(service);
+            } else {
+                trainLatency.record(latency);
+                trainService.record(service);
+            }
+            if (!ok) {
+                errors++;
+            }
+        }
+
+        private void merge(Interval other) {
+            rankLatency.merge(other.rankLatency);
+            rankService.merge(other.rankService);
+            trainLatency.merge(other.trainLatency);
+            trainService.merge(other.trainService);
+            errors += other.errors;
+        }
+
+        /**
+         * Returns the number of seconds from the start of the run to the end of this interval.
+         */
+        public double getTime() {
+            return time;
+        }
+
+        /**
+         * Returns the latency of rank calls measured from when each should have started.
+         */
+        public LatencyHistogram getRankLatency() {
+            return rankLatency;
+        }
+
+        /**
+         * Returns the time spent inside rank calls.
+         */
+        public LatencyHistogram getRankService() {
+            return rankService;
+        }
+
+        public LatencyHistogram getTrainLatency() {
+            return trainLatency;
+        }
+
+        public LatencyHistogram getTrainService() {
+            return trainService;
+        }
+
+        public long getErrors() {
+            return errors;
+        }
+
+        public double getRankRate() {
+            return rankLatency.count() / seconds;
+        }
+
+        public double getTrainRate() {
+            return trainLatency.count() / seconds;
+        }
+
+        private void print(PrintStream out) {
+            out.printf("%.1f\t%.0f\t%s\t%.0f\t%s\t%d\n", time,
+                    getRankRate(), percentiles(rankLatency), getTrainRate(), percentiles(trainLatency), errors);
+        }
+
+        private static String percentiles(LatencyHistogram h) {
+            return String.format("%.2f\t%.2f\t%.2f", h.percentile(0.5) / 1e3, h.percentile(0.99) / 1e3, h.percentile(0.999) / 1e3);
+        }
+    }
+
+    /**
+     * The results of a load test.
+     */
+    public static class Report {
+        private final List<Interval> intervals = Lists.newArrayList();
+        private final Interval total = new Interval(0, 0);
+        private long lastTime;
+
+        private void add(Interval x) {
+            intervals.add(x);
+            total.merge(x);
+        }
+
+        public List<Interval> getIntervals() {
+            return intervals;
+        }
+
+        /**
+         * Returns all of the measurements merged together.
+         */
+        public Interval getTotal() {
+            return total;
+        }
+
+        private static void printHeader(PrintStream out) {
+            out.printf("time\trank/s\trank-p50-us\trank-p99-us\trank-p999-us\ttrain/s\ttrain-p50-us\ttrain-p99-us\ttrain-p999-us\terrors\n");
+        }
+
+        public void print(PrintStream out) {
+            double seconds = 0;
+            for (Interval x : intervals) {
+                seconds = Math.max(seconds, x.time);
+            }
+            out.printf("rank/s\t%.0f\n", total.rankLatency.count() / seconds);
+            out.printf("train/s\t%.0f\n", total.trainLatency.count() / seconds);
+            out.printf("errors\t%d\n", total.errors);
+            printLatency(out, "rank-latency", total.rankLatency);
+            printLatency(out, "rank-service", total.rankService);
+            printLatency(out, "train-latency", total.trainLatency);
+            printLatency(out, "train-service", total.trainService);
+        }
+
+        private static void printLatency(PrintStream out, String name, LatencyHistogram h) {
+            out.printf("%s-us\tp50=%.2f\tp99=%.2f\tp999=%.2f\tmax=%.2f\n", name,
+                    h.percentile(0.5) / 1e3, h.percentile(0.99) / 1e3, h.percentile(0.999) / 1e3, h.max() / 1e3);
+        }
+    }
+
+    /**
+     * Samples arm numbers with Zipfian probabilities by binary search in the cumulative
+     * distribution.
+     */
+    static class ZipfSampler {
+        private final double[] cdf;
+
+        ZipfSampler(int n, double exponent) {
+            cdf = new double[n];
+            double sum = 0;
+            for (int i = 0; i < n; i++) {
+                sum += Math.pow(i + 1, -exponent);
+                cdf[i] = sum;
+            }
+            for (int i = 0; i < n; i++) {
+                cdf[i] /= sum;
+            }
+            cdf[n - 1] = 1;
+        }
+
+        int sample(Random gen) {
+            int i = Arrays.binarySearch(cdf, gen.nextDouble());
+            return i >= 0 ? i : -i - 1;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mapr.bandit;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads a click log written by {@link TraceWriter} through a memory map.
+ * <p/>
+ * The file is mapped a window at a time so that logs larger than the 2GB limit on a single
+ * mapping can be read.  When a record would cross the end of the current window, a new window is
+ * mapped starting at that record.  Records are decoded straight from the mapped buffer into a
+ * reused {@link TraceRecord} so reading doesn't allocate.
+ */
+public class TraceReader implements Closeable {
+    private static final long DEFAULT_WINDOW = 1L << 28;
+
+    private final RandomAccessFile file;
+    private final FileChannel channel;
+    private final long size;
+    private final long window;
+    private final int numArms;
+
+    private MappedByteBuffer buffer;
+    // file offset of the start of the buffer
+    private long base;
+
+    public TraceReader(File input) throws IOException {
+        this(input, DEFAULT_WINDOW);
+    }
+
+    TraceReader(File input, long window) throws IOException {
+        this.window = window;
+        file = new RandomAccessFile(input, "r");
+        channel = file.getChannel();
+        size = channel.size();
+        map(0);
+        if (size < TraceWriter.HEADER_SIZE || buffer.getInt() != TraceWriter.MAGIC) {
+            close();
+            throw new IOException("Not a trace file: " + input);
+        }
+        int version = buffer.getInt();
+        if (version != TraceWriter.VERSION) {
+            close();
+            throw new IOException("Unknown trace version " + version);
+        }
+        numArms = buffer.getInt();
+    }
+
+    /**
+     * Returns the number of arms given when the log was written.
+     */
+    public int getNumArms() {
+        return numArms;
+    }
+
+    /**
+     * Reads the next record.
+     *
+     * @param r The record to fill in.
+     * @return False if there are no more records.
+     * @throws IOException If the log is truncated or corrupt.
+     */
+    public boolean next(TraceRecord r) throws IOException {
+        long position = base + buffer.position();
+        if (position >= size) {
+            return false;
+        }
+        if (buffer.remaining() < TraceWriter.RECORD_HEADER_SIZE) {
+            map(position);
+            if (buffer.remaining() < TraceWriter.RECORD_HEADER_SIZE) {
+                throw new IOException("Truncated record at " + position);
+            }
+        }
+
+        long timestamp = buffer.getLong();
+        int thread = buffer.getInt();
+        int length = buffer.getInt();
+        long bytes = 5L * length;
+        if (length < 0 || bytes > size - position - TraceWriter.RECORD_HEADER_SIZE) {
+            throw new IOException("Bad page length " + length + " at " + position);
+        }
+        if (buffer.remaining() < bytes) {
+            map(position);
+            buffer.position(TraceWriter.RECORD_HEADER_SIZE);
+            if (buffer.remaining() < bytes) {
+                throw new IOException("Record at " + position + " is larger than the map window");
+            }
+        }
+
+        r.set(timestamp, thread, length);
+        int[] arms = r.getArms();
+        for (int i = 0; i < length; i++) {
+            int arm = buffer.getInt();
+            if (arm < 0 || arm >= numArms) {
+                throw new IOException(String.format("Arm %d is not in [0, %d) at %d", arm, numArms, position));
+            }
+            arms[i] = arm;
+        }
+        buffer.get(r.getFeedback(), 0, length);
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+
+    private void map(long position) throws IOException {
+        base = position;
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(window, size - position));
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mapr.bandit;
+
+import java.util.Arrays;
+
+/**
+ * One event from a click log.  An event records a page of items that was shown and the feedback
+ * that was received for each position on the page.
+ * <p/>
+ * Records are mutable so that a reader can fill the same record over and over without
+ * allocating.  Only the first {@link #getLength()} entries of the arrays are meaningful.
+ */
+public class TraceRecord {
+    private long timestamp;
+    private int thread;
+    private int length;
+    private int[] arms = new int[16];
+    private byte[] feedback = new byte[16];
+
+    public TraceRecord() {
+    }
+
+    public TraceRecord(long timestamp, int thread, int[] arms, byte[] feedback) {
+        set(timestamp, thread, arms.length);
+        System.arraycopy(arms, 0, this.arms, 0, arms.length);
+        System.arraycopy(feedback, 0, this.feedback, 0, arms.length);
+    }
+
+    /**
+     * Sets the header fields and makes sure there is room for a page of the given length.
+     */
+    void set(long timestamp, int thread, int length) {
+        this.timestamp = timestamp;
+        this.thread = thread;
+        this.length = length;
+        if (arms.length < length) {
+            arms = Arrays.copyOf(arms, Math.max(length, 2 * arms.length));
+            feedback = Arrays.copyOf(feedback, arms.length);
+        }
+    }
+
+    /**
+     * Returns the time of the event in nanoseconds from an arbitrary origin.
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    /**
+     * Returns the id of the server thread that handled the request.
+     */
+    public int getThread() {
+        return thread;
+    }
+
+    /**
+     * Returns the number of items on the page.
+     */
+    public int getLength() {
+        return length;
+    }
+
+    /**
+     * Returns the items shown, in page order.
+     */
+    public int[] getArms() {
+        return arms;
+    }
+
+    /**
+     * Returns the feedback for each position on the page, typically 1 for a click and 0 otherwise.
+     */
+    public byte[] getFeedback() {
+        return feedback;
+    }
+}
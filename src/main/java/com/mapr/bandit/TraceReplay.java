@@ -0,0 +1,214 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mapr.bandit;
+
+import com.mapr.stats.bandit.BanditFactory;
+import com.mapr.stats.bandit.BayesianBandit;
+import com.mapr.stats.bandit.ExperimentMatrix;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Replays a recorded click log through a bandit as fast as possible.
+ * <p/>
+ * For each event in the log, the bandit ranks a page as long as the one that was logged and then
+ * is trained with the logged feedback for each position.  The time for each ranking and each
+ * training call is recorded so that throughput and latency percentiles can be reported.
+ * <p/>
+ * Since the log only has feedback for the pages that were actually shown, we can't know how
+ * users would have reacted to the bandit's pages.  Instead we report counterfactual metrics that
+ * compare the bandit's pages with the logged ones.  The overlap is the fraction of logged items
+ * that the bandit would also have shown.  The click coverage is the fraction of clicked items that
+ * the bandit would have shown.  The replay estimate of the click rate in the first position
+ * uses only the events where the bandit would have put the same item first as was logged.  If the
+ * logged pages were chosen at random, this is an unbiased estimate of the bandit's own click rate
+ * in that position.
+ * <pre>
+ *     TraceReplay trace-file [model [seed]]
+ * </pre>
+ * The model is described the same way as factories in {@link ExperimentMatrix}.
+ */
+public class TraceReplay {
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.printf("Usage: TraceReplay trace-file [model [seed]]\n");
+            return;
+        }
+        BanditFactory factory = ExperimentMatrix.factory(args.length > 1 ? args[1] : "beta");
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : 1;
+
+        try (TraceReader in = new TraceReader(new File(args[0]))) {
+            BayesianBandit bandit = factory.createBandit(in.getNumArms(), new Random(seed));
+            replay(in, bandit).print(System.out);
+        }
+    }
+
+    /**
+     * Runs every event in a log through a bandit.
+     *
+     * @param in     The log.
+     * @param bandit The bandit, which should have as many arms as the log.
+     * @return Throughput, latency and counterfactual results.
+     */
+    public static Report replay(TraceReader in, BayesianBandit bandit) throws IOException {
+        Report r = new Report();
+        TraceRecord event = new TraceRecord();
+
+        // marks which arms are on the bandit's page for the current event
+        int[] mark = new int[in.getNumArms()];
+        int generation = 0;
+
+        long firstTimestamp = 0;
+        long lastTimestamp = 0;
+        long start = System.nanoTime();
+        while (in.next(event)) {
+            int n = event.getLength();
+            int[] arms = event.getArms();
+            byte[] feedback = event.getFeedback();
+            if (r.events == 0) {
+                firstTimestamp = event.getTimestamp();
+            }
+            lastTimestamp = event.getTimestamp();
+            r.events++;
+
+            long t0 = System.nanoTime();
+            List<Integer> page = bandit.rank(n);
+            long t1 = System.nanoTime();
+            r.rankLatency.record(t1 - t0);
+
+            generation++;
+            for (int k : page) {
+                mark[k] = generation;
+            }
+            if (!page.isEmpty() && n > 0 && page.get(0) == arms[0]) {
+                r.replayMatches++;
+                r.replayClicks += feedback[0];
+            }
+            for (int i = 0; i < n; i++) {
+                boolean shown = mark[arms[i]] == generation;
+                r.impressions++;
+                if (shown) {
+                    r.overlap++;
+                }
+                if (feedback[i] > 0) {
+                    r.clicks++;
+                    if (shown) {
+                        r.coveredClicks++;
+                    }
+                }
+            }
+
+            for (int i = 0; i < n; i++) {
+                long t2 = System.nanoTime();
+                bandit.train(arms[i], feedback[i]);
+                r.trainLatency.record(System.nanoTime() - t2);
+            }
+        }
+        r.elapsed = System.nanoTime() - start;
+        r.traceSpan = lastTimestamp - firstTimestamp;
+        return r;
+    }
+
+    /**
+     * The results of a replay.  Times are in nanoseconds.
+     */
+    public static class Report {
+        private final LatencyHistogram rankLatency = new LatencyHistogram();
+        private final LatencyHistogram trainLatency = new LatencyHistogram();
+
+        private long events = 0;
+        private long impressions = 0;
+        private long clicks = 0;
+        private long overlap = 0;
+        private long coveredClicks = 0;
+        private long replayMatches = 0;
+        private long replayClicks = 0;
+        private long elapsed = 0;
+        private long traceSpan = 0;
+
+        public long getEvents() {
+            return events;
+        }
+
+        public long getImpressions() {
+            return impressions;
+        }
+
+        public LatencyHistogram getRankLatency() {
+            return rankLatency;
+        }
+
+        public LatencyHistogram getTrainLatency() {
+            return trainLatency;
+        }
+
+        public double getLoggedClickRate() {
+            return (double) clicks / impressions;
+        }
+
+        public double getOverlap() {
+            return (double) overlap / impressions;
+        }
+
+        public double getClickCoverage() {
+            return (double) coveredClicks / clicks;
+        }
+
+        public long getReplayMatches() {
+            return replayMatches;
+        }
+
+        public double getReplayClickRate() {
+            return (double) replayClicks / replayMatches;
+        }
+
+        /**
+         * Returns how many times faster than real time the log was replayed.
+         */
+        public double getSpeedup() {
+            return (double) traceSpan / elapsed;
+        }
+
+        public void print(PrintStream out) {
+            double seconds = elapsed * 1e-9;
+            out.printf("events\t%d\n", events);
+            out.printf("impressions\t%d\n", impressions);
+            out.printf("seconds\t%.3f\n", seconds);
+            out.printf("speedup\t%.1f\n", getSpeedup());
+            out.printf("rank/s\t%.0f\n", rankLatency.count() / seconds);
+            out.printf("train/s\t%.0f\n", trainLatency.count() / seconds);
+            printLatency(out, "rank", rankLatency);
+            printLatency(out, "train", trainLatency);
+            out.printf("logged-ctr\t%.4f\n", getLoggedClickRate());
+            out.printf("overlap\t%.4f\n", getOverlap());
+            out.printf("click-coverage\t%.4f\n", getClickCoverage());
+            out.printf("replay-matches\t%d\n", replayMatches);
+            out.printf("replay-ctr@1\t%.4f\n", getReplayClickRate());
+        }
+
+        private static void printLatency(PrintStream out, String name, LatencyHistogram h) {
+            out.printf("%s-latency-us\tp50=%.2f\tp90=%.2f\tp99=%.2f\tp999=%.2f\tmax=%.2f\n", name,
+                    h.percentile(0.5) / 1e3, h.percentile(0.9) / 1e3, h.percentile(0.99) / 1e3,
+                    h.percentile(0.999) / 1e3, h.max() / 1e3);
+        }
+    }
+}
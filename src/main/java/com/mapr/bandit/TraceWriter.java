@@ -0,0 +1,85 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mapr.bandit;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Writes a click log in the binary form read by {@link TraceReader}.
+ * <p/>
+ * The file starts with a magic number, a version and the number of arms.  Each record that
+ * follows has a timestamp (8 bytes), a thread id (4 bytes), the page length n (4 bytes), n arm
+ * numbers (4 bytes each) and n feedback values (1 byte each).  All values are big-endian.
+ */
+public class TraceWriter implements Closeable {
+    public static final int MAGIC = 0x42545243;
+    public static final int VERSION = 1;
+    static final int HEADER_SIZE = 12;
+    static final int RECORD_HEADER_SIZE = 16;
+
+    private final DataOutputStream out;
+    private final int numArms;
+
+    /**
+     * @param file    Where to write the log.
+     * @param numArms How many different arms can appear in the log.
+     */
+    public TraceWriter(File file, int numArms) throws IOException {
+        this.numArms = numArms;
+        out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeInt(numArms);
+    }
+
+    public void write(TraceRecord r) throws IOException {
+        write(r.getTimestamp(), r.getThread(), r.getLength(), r.getArms(), r.getFeedback());
+    }
+
+    /**
+     * Writes a single event.
+     *
+     * @param timestamp When the event happened, in nanoseconds.
+     * @param thread    Which server thread handled the event.
+     * @param length    How many items were on the page.
+     * @param arms      The items on the page in order.
+     * @param feedback  The feedback for each position on the page.
+     */
+    public void write(long timestamp, int thread, int length, int[] arms, byte[] feedback) throws IOException {
+        out.writeLong(timestamp);
+        out.writeInt(thread);
+        out.writeInt(length);
+        for (int i = 0; i < length; i++) {
+            if (arms[i] < 0 || arms[i] >= numArms) {
+                throw new IllegalArgumentException(String.format("Arm %d is not in [0, %d)", arms[i], numArms));
+            }
+            out.writeInt(arms[i]);
+        }
+        out.write(feedback, 0, length);
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
@@ -0,0 +1,182 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mapr.stats;
+
+import com.mapr.stats.random.BetaDistribution;
+
+import java.util.Random;
+
+/**
+ * Runs many independent {@link BetaWalk}s at once so that a whole set of slowly drifting conversion
+ * probabilities can be advanced with a single call.
+ * <p/>
+ * The state is kept in primitive arrays and the acceptance test is done in log space.  Since the
+ * Metropolis ratio only needs the difference of log densities, the normalizing constant
+ * \( \log B(\alpha, \beta) \) cancels and is computed just once for {@link #logPdf(int)}.  The
+ * unnormalized log density of the current position of each walk is cached so that a step costs a
+ * gaussian deviate and two logarithms for the proposal, plus a uniform deviate and an exp only when
+ * the proposal is less likely than the current position.
+ * <p/>
+ * All randomness comes from the generator passed to the constructor so that a simulation using
+ * these walks is reproducible from a seed.
+ */
+public class BetaWalkArray {
+    private final Random gen;
+    private final double stepSize;
+    private final double alpha1;
+    private final double beta1;
+    private final double logBeta;
+
+    private final double[] p;
+    private final double[] logDensity;
+    private int best;
+
+    /**
+     * @param n        How many walks to run.
+     * @param alpha    The first shape parameter of the stationary distribution.
+     * @param beta     The second shape parameter of the stationary distribution.
+     * @param stepSize The standard deviation of the proposed steps.
+     * @param gen      The source of randomness for the initial positions and all steps.
+     */
+    public BetaWalkArray(int n, double alpha, double beta, double stepSize, Random gen) {
+        this.gen = gen;
+        this.stepSize = stepSize;
+        this.alpha1 = alpha - 1;
+        this.beta1 = beta - 1;
+        this.logBeta = BetaDistribution.logBeta(alpha, beta);
+
+        p = new double[n];
+        logDensity = new double[n];
+
+        // start from the stationary distribution so there is no burn-in
+        BetaDistribution bd = new BetaDistribution(alpha, beta, gen);
+        for (int i = 0; i < n; i++) {
+            double x = bd.nextDouble();
+            // the gamma sampler can underflow for small shape parameters
+            x = Math.min(Math.max(x, Double.MIN_NORMAL), 1 - 0x1p-53);
+            p[i] = x;
+            logDensity[i] = unnormalizedLogPdf(x);
+        }
+        best = argMax();
+    }
+
+    /**
+     * Advances every walk by one Metropolis step.
+     */
+    public void step() {
+        final double[] p = this.p;
+        final double[] logDensity = this.logDensity;
+        int best = 0;
+        double max = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < p.length; i++) {
+            double x = p[i];
+            double x1 = x + gen.nextGaussian() * stepSize;
+            if (x1 > 0 && x1 < 1) {
+                double d1 = unnormalizedLogPdf(x1);
+                double delta = d1 - logDensity[i];
+                if (delta >= 0 || gen.nextDouble() < Math.exp(delta)) {
+                    p[i] = x1;
+                    logDensity[i] = d1;
+                    x = x1;
+                }
+            }
+            if (x > max) {
+                max = x;
+                best = i;
+            }
+        }
+        this.best = best;
+    }
+
+    /**
+     * Advances every walk by several steps.
+     */
+    public void step(int steps) {
+        for (int i = 0; i < steps; i++) {
+            step();
+        }
+    }
+
+    public int size() {
+        return p.length;
+    }
+
+    /**
+     * Returns the current probability for one walk.
+     */
+    public double get(int i) {
+        return p[i];
+    }
+
+    /**
+     * Returns the current probabilities.  The array is live and will change on the next step.
+     */
+    public double[] getProbabilities() {
+        return p;
+    }
+
+    /**
+     * Returns the index of the walk with the largest current probability.
+     */
+    public int getBest() {
+        return best;
+    }
+
+    /**
+     * Returns the largest current probability.
+     */
+    public double getMax() {
+        return p[best];
+    }
+
+    /**
+     * Returns the normalized log density of the current position of a walk under the stationary
+     * distribution.
+     */
+    public double logPdf(int i) {
+        return logDensity[i] - logBeta;
+    }
+
+    /**
+     * Samples a Bernoulli reward for a walk using its current probability.
+     */
+    public int nextReward(int i) {
+        return gen.nextDouble() < p[i] ? 1 : 0;
+    }
+
+    private double unnormalizedLogPdf(double x) {
+        double r = 0;
+        if (alpha1 != 0) {
+            r += alpha1 * Math.log(x);
+        }
+        if (beta1 != 0) {
+            r += beta1 * Math.log1p(-x);
+        }
+        return r;
+    }
+
+    private int argMax() {
+        int r = 0;
+        for (int i = 1; i < p.length; i++) {
+            if (p[i] > p[r]) {
+                r = i;
+            }
+        }
+        return r;
+    }
+}
@@ -17,25 +17,29 @@
 
 package com.mapr.stats.bandit;
 
-import com.google.common.collect.ImmutableList;
+import com.google.common.base.Charsets;
+import com.google.common.base.Joiner;
 import com.google.common.collect.Lists;
-import com.mapr.stats.random.BinomialDistributionSampler;
+import com.google.common.io.Files;
+import com.mapr.stats.BetaWalkArray;
+import com.mapr.stats.io.ResultSink;
 import com.mapr.stats.random.DistributionGenerator;
 import com.mapr.stats.random.DistributionWithMean;
-import com.mapr.stats.random.NormalDistributionSampler;
 import org.apache.mahout.common.RandomUtils;
 import org.apache.mahout.math.stats.OnlineSummarizer;
 
+import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.PrintWriter;
-import java.lang.reflect.InvocationTargetException;
+import java.io.Reader;
+import java.io.StringReader;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 import java.util.Random;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 /**
  * Simulate a two-armed bandit playing against a beta-Bayesian model.
@@ -60,125 +64,104 @@ import java.util.concurrent.Executors;
  */
 public class BanditTrainer {
     private static final int BUCKET_SIZE = 1;
+    private static final int REPLICATIONS_PER_TASK = 4;
 
-    public static void main(String[] args) throws FileNotFoundException, NoSuchMethodException, InvocationTargetException, InstantiationException, IllegalAccessException, InterruptedException {
+    private static ForkJoinPool defaultPool;
+
+    /**
+     * The experiments that are run if no configuration file is given.  See {@link ExperimentMatrix}
+     * for the format.  Each job names its output so that the files have the same names as they
+     * always have.
+     */
+    static final String DEFAULT_EXPERIMENTS = Joiner.on('\n').join(
+            "replications 1000",
+            "",
+            "matrix normal",
+            "factory gamma-normal",
+            "sampler normal 0.1",
+            "arms 2",
+            "steps 10000",
+            "output regret-normal-0.1 local-normal-0.1",
+            "",
+            "matrix normal-10",
+            "factory gamma-normal",
+            "sampler normal 0.1",
+            "arms 10",
+            "steps 1000",
+            "output regret-normal-10x0.1 local-normal-10x0.1",
+            "",
+            "matrix normal-100",
+            "factory gamma-normal",
+            "sampler normal 0.1",
+            "arms 100",
+            "steps 1000",
+            "output regret-normal-100x0.1 local-normal-100x0.1",
+            "",
+            "matrix normal-long",
+            "replications 300",
+            "factory gamma-normal",
+            "sampler normal 1",
+            "arms 2",
+            "steps 200000",
+            "output regret-normal-1 local-normal-1",
+            "",
+            "matrix epsilon",
+            "factory epsilon 0.05",
+            "sampler normal 1",
+            "arms 2",
+            "steps 10000",
+            "output regret-epsilon-normal-1 local-epsilon-normal-1",
+            "",
+            "matrix binomial",
+            "factory beta",
+            "sampler binomial 1 1",
+            "arms 2",
+            "steps 1000",
+            "output regret local",
+            "",
+            "matrix binomial-20",
+            "factory beta",
+            "sampler binomial 1 1",
+            "arms 20",
+            "steps 1000",
+            "output regret-20 local-20",
+            "",
+            "matrix binomial-100",
+            "factory beta",
+            "sampler binomial 1 1",
+            "arms 100",
+            "steps 1000",
+            "output regret-100 local-100");
+
+    /**
+     * Runs a matrix of regret experiments.
+     * <pre>
+     *     BanditTrainer [threads [config-file [output-directory]]]
+     * </pre>
+     * Without a configuration file, a standard set of experiments is run.  Results go into the
+     * current directory by default.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
         int threads = 16;
 
         if (args.length > 0) {
             threads = Integer.parseInt(args[0]);
         }
 
-        System.out.printf("regret\n");
-        ExecutorService ex = Executors.newFixedThreadPool(threads);
-
-        List<Callable<Integer>> tasks = ImmutableList.of(
-                new Callable<Integer>() {
-                    @Override
-                    public Integer call() {
-                        try {
-                            totalRegret("regret-normal-0.1.tsv", "local-normal-0.1.tsv", 1000, 2, 10000, new GammaNormalBayesFactory(), new NormalDistributionSampler(0.1, new Random()));
-                            System.out.printf("2\n");
-                        } catch (FileNotFoundException e) {
-                            e.printStackTrace();
-                        }
-                        return null;
-                    }
-                },
-                new Callable<Integer>() {
-                    @Override
-                    public Integer call() {
-                        try {
-                            totalRegret("regret-epsilon-normal-1.tsv", "local-epsilon-normal-1.tsv", 1000, 2, 10000, new EpsilonGreedyFactory(0.05), new NormalDistributionSampler(1, new Random()));
-                            System.out.printf("2e\n");
-                        } catch (FileNotFoundException e) {
-                            e.printStackTrace();
-                        }
-                        return null;
-                    }
-                },
+        List<ExperimentMatrix.Job> jobs;
+        if (args.length > 1) {
+            try (Reader in = Files.newReader(new File(args[1]), Charsets.UTF_8)) {
+                jobs = ExperimentMatrix.parse(in);
+            }
+        } else {
+            jobs = ExperimentMatrix.parse(new StringReader(DEFAULT_EXPERIMENTS));
+        }
 
+        File outputDir = new File(args.length > 2 ? args[2] : ".");
 
-                new Callable<Integer>() {
-                    @Override
-                    public Integer call() {
-                        try {
-                            totalRegret("regret-normal-1.tsv", "local-normal-1.tsv", 300, 2, 200000, new GammaNormalBayesFactory(), new NormalDistributionSampler(1, new Random()));
-                            System.out.printf("normal 1\n");
-                        } catch (FileNotFoundException e) {
-                            e.printStackTrace();
-                        }
-                        return null;
-                    }
-                },
-
-                new Callable<Integer>() {
-                    @Override
-                    public Integer call() {
-                        try {
-                            totalRegret("regret-normal-10x0.1.tsv", "local-normal-10x0.1.tsv", 1000, 10, 1000, new GammaNormalBayesFactory(), new NormalDistributionSampler(0.1, new Random()));
-                            System.out.printf("10\n");
-                        } catch (FileNotFoundException e) {
-                            e.printStackTrace();
-                        }
-                        return null;
-                    }
-                },
-
-                new Callable<Integer>() {
-                    @Override
-                    public Integer call() {
-                        try {
-                            totalRegret("regret-normal-100x0.1.tsv", "local-normal-100x0.1.tsv", 1000, 100, 1000, new GammaNormalBayesFactory(), new NormalDistributionSampler(.1, new Random()));
-                            System.out.printf("100\n");
-                        } catch (FileNotFoundException e) {
-                            e.printStackTrace();
-                        }
-                        return null;
-                    }
-                },
-
-                new Callable<Integer>() {
-                    @Override
-                    public Integer call() {
-                        try {
-                            totalRegret("regret.tsv", "local.tsv", 1000, 2, 1000, new BetaBayesFactory(), new BinomialDistributionSampler(1, 1, new Random()));
-                            System.out.printf("2\n");
-                        } catch (FileNotFoundException e) {
-                            e.printStackTrace();
-                        }
-                        return null;
-                    }
-                },
-
-                new Callable<Integer>() {
-                    @Override
-                    public Integer call() {
-                        try {
-                            totalRegret("regret-100.tsv", "local-100.tsv", 1000, 100, 1000, new BetaBayesFactory(), new BinomialDistributionSampler(1, 1, new Random()));
-                            System.out.printf("100\n");
-                        } catch (FileNotFoundException e) {
-                            e.printStackTrace();
-                        }
-                        return null;
-                    }
-                },
-
-                new Callable<Integer>() {
-                    @Override
-                    public Integer call() {
-                        try {
-                            totalRegret("regret-20.tsv", "local-20.tsv", 1000, 20, 1000, new BetaBayesFactory(), new BinomialDistributionSampler(1, 1, new Random()));
-                            System.out.printf("20\n");
-                        } catch (FileNotFoundException e) {
-                            e.printStackTrace();
-                        }
-                        return null;
-                    }
-                }
-        );
-        ex.invokeAll(tasks);
-        ex.shutdown();
-        System.out.printf("All done");
+        System.out.printf("regret\n");
+        ExperimentMatrix.run(jobs, outputDir, threads);
+        System.out.printf("All done\n");
 
 //    System.out.printf("error rates\n");
 //    errorRate("errors.tsv");
@@ -201,12 +184,11 @@ public class BanditTrainer {
      * @param p2         Second probability of reward
      * @param cutoff     Only keep results after this many steps
      * @return Average number of correct choices.
-     * @throws java.io.FileNotFoundException If the directory holding the output directory doesn't exist.
+     * @throws java.io.IOException If the directory holding the output directory doesn't exist.
      */
-    public static double commitTime(String outputFile, int n, double p1, double p2, int cutoff) throws FileNotFoundException {
-        try (PrintWriter out = new PrintWriter(outputFile)) {
+    public static double commitTime(String outputFile, int n, double p1, double p2, int cutoff) throws IOException {
+        try (ResultSink out = ResultSink.open(outputFile, "i", "k")) {
             Random gen = new Random();
-            out.printf("i\tk\n");
             int impressions = 0;
             int correct = 0;
             for (int j = 0; j < 1000; j++) {
@@ -218,7 +200,7 @@ public class BanditTrainer {
                 BetaBayesModel s = new BetaBayesModel();
                 for (int i = 0; i < n; i++) {
                     int k = s.sample();
-                    out.printf("%d\t%d\n", i, k);
+                    out.add(i).add(k).endRow();
 
                     if (i > cutoff) {
                         impressions++;
@@ -359,86 +341,374 @@ public class BanditTrainer {
      * @param modelFactory     How to construct the solver.
      * @param refSampler       How to get reward distributions for bandits
      * @return An estimate of the average final cumulative regret
-     * @throws java.io.FileNotFoundException If the output file can't be opened due to
-     *                                       a missing directory.
+     * @throws java.io.IOException If the output file can't be opened due to a missing directory.
      */
-    public static double totalRegret(String cumulativeOutput, String perTurnOutput, int replications, int bandits, int maxSteps, BanditFactory modelFactory, DistributionGenerator refSampler) throws FileNotFoundException {
-        List<OnlineSummarizer> cumulativeRegret = Lists.newArrayList();
-        List<OnlineSummarizer> localRegret = Lists.newArrayList();
-        List<Integer> steps = Lists.newArrayList();
-        List<Integer> localSteps = Lists.newArrayList();
+    public static double totalRegret(String cumulativeOutput, String perTurnOutput, int replications, int bandits, int maxSteps, BanditFactory modelFactory, DistributionGenerator refSampler) throws IOException {
+        return totalRegret(cumulativeOutput, perTurnOutput, replications, bandits, maxSteps, modelFactory, refSampler, new Random().nextLong(), defaultPool());
+    }
 
-        Random gen = new Random();
+    /**
+     * Computes the same regret curves as {@link #totalRegret(String, String, int, int, int, BanditFactory, DistributionGenerator)}
+     * but runs the replications in parallel.
+     * <p/>
+     * Each replication gets its own random number generator seeded from the master seed and the
+     * replication number.  Replications are split into a fixed tree of tasks that doesn't depend on
+     * how many threads are available and partial sums are combined in the same order every time.
+     * This means that the output is bit-for-bit identical for a given seed regardless of the size
+     * of the pool.
+     *
+     * @param seed The master seed for the experiment.
+     * @param pool Where to run the replications.
+     * @see #totalRegret(String, String, int, int, int, BanditFactory, DistributionGenerator)
+     */
+    public static double totalRegret(String cumulativeOutput, String perTurnOutput, int replications, int bandits, int maxSteps,
+                                     BanditFactory modelFactory, DistributionGenerator refSampler, long seed, ForkJoinPool pool) throws IOException {
+        return regret(cumulativeOutput, perTurnOutput, replications, maxSteps, new StationaryScenario(bandits, maxSteps, modelFactory, refSampler), seed, pool);
+    }
 
-        // for each horizon time span of interest
-        for (int j = 0; j < replications; j++) {
-            BayesianBandit s = modelFactory.createBandit(bandits, gen);
+    /**
+     * Computes regret curves against arms whose conversion probabilities drift over time.  Each
+     * replication starts a {@link BetaWalkArray} with one walk per arm and advances all of the walks
+     * after every trial.  Regret for a trial is measured against whichever arm is best at that
+     * moment so a solver that stops exploring will accumulate regret as the best arm changes.
+     * <p/>
+     * Replications are run and reduced just as in
+     * {@link #totalRegret(String, String, int, int, int, BanditFactory, DistributionGenerator, long, ForkJoinPool)}
+     * so the output is reproducible for a given seed.
+     *
+     * @param alpha    First shape parameter of the stationary distribution of the probabilities.
+     * @param beta     Second shape parameter of the stationary distribution of the probabilities.
+     * @param stepSize The size of the Metropolis steps taken by each probability on each trial.
+     * @return The median of the final cumulative regret.
+     */
+    public static double driftingRegret(String cumulativeOutput, String perTurnOutput, int replications, int bandits, int maxSteps,
+                                        BanditFactory modelFactory, double alpha, double beta, double stepSize,
+                                        long seed, ForkJoinPool pool) throws IOException {
+        return regret(cumulativeOutput, perTurnOutput, replications, maxSteps,
+                new DriftingScenario(bandits, maxSteps, modelFactory, alpha, beta, stepSize), seed, pool);
+    }
+
+    /**
+     * Computes the same regret curves as
+     * {@link #totalRegret(String, String, int, int, int, BanditFactory, DistributionGenerator, long, ForkJoinPool)}
+     * but decides how many replications to run as it goes.
+     * <p/>
+     * Replications are run in batches.  After each batch, a 95% confidence interval for the mean
+     * final cumulative regret is computed and no more batches are run once its half-width is below
+     * the target or the maximum number of replications is reached.  Replication j uses the same
+     * seed as it would in a fixed size run so the first n replications are the same either way.
+     *
+     * @param halfWidth       The desired half-width of the confidence interval.
+     * @param batch           How many replications to run between checks.
+     * @param maxReplications The most replications to run no matter how wide the interval is.
+     * @return The estimate of final regret and the precision that was achieved.
+     */
+    public static RegretEstimate adaptiveRegret(String cumulativeOutput, String perTurnOutput, int bandits, int maxSteps,
+                                                BanditFactory modelFactory, DistributionGenerator refSampler,
+                                                double halfWidth, int batch, int maxReplications,
+                                                long seed, ForkJoinPool pool) throws IOException {
+        return adaptiveRegret(cumulativeOutput, perTurnOutput, maxSteps, stationary(bandits, maxSteps, modelFactory, refSampler),
+                false, halfWidth, batch, maxReplications, seed, pool);
+    }
+
+    /**
+     * Estimates the difference in final cumulative regret between two solvers, running
+     * replications in batches until a confidence interval for the difference is narrow enough.
+     * <p/>
+     * Both solvers are run with the same seed for each replication and thus face the same
+     * arms.  The variation due to picking arms largely cancels in the paired differences so far
+     * fewer replications are needed to tell two solvers apart than if each were run separately.
+     * Only the regret after the last step is compared so no regret curves are kept or written.
+     *
+     * @return The estimate of the regret of the first solver minus the regret of the second.
+     * @see #adaptiveRegret(String, String, int, int, BanditFactory, DistributionGenerator, double, int, int, long, ForkJoinPool)
+     */
+    public static RegretEstimate pairedRegret(int bandits, int maxSteps, BanditFactory first, BanditFactory second,
+                                              DistributionGenerator refSampler, double halfWidth, int batch, int maxReplications,
+                                              long seed, ForkJoinPool pool) {
+        return pairedRegret(maxSteps, stationary(bandits, maxSteps, first, refSampler),
+                stationary(bandits, maxSteps, second, refSampler), halfWidth, batch, maxReplications, seed, pool);
+    }
+
+    static Scenario stationary(int bandits, int maxSteps, BanditFactory modelFactory, DistributionGenerator refSampler) {
+        return new StationaryScenario(bandits, maxSteps, modelFactory, refSampler);
+    }
+
+    static Scenario drifting(int bandits, int maxSteps, BanditFactory modelFactory, double alpha, double beta, double stepSize) {
+        return new DriftingScenario(bandits, maxSteps, modelFactory, alpha, beta, stepSize);
+    }
+
+    /**
+     * Creates the curve for per-step regret.  Each step has its own bucket unless the buckets are
+     * log-spaced, in which case a bucket has the average per-step regret over its steps.  Log-spaced
+     * buckets keep the size of the curve, and the memory needed by each replication task, down to a
+     * few hundred buckets even for very long experiments.
+     */
+    static RegretCurve localCurve(int maxSteps, boolean logSpaced) {
+        return logSpaced ? RegretCurve.logSpaced(maxSteps) : RegretCurve.linear(maxSteps, BUCKET_SIZE);
+    }
+
+    /**
+     * @param logSpacedLocal Whether the per-step regret curve uses log-spaced buckets.  See
+     *                       {@link #localCurve(int, boolean)}.
+     */
+    static RegretEstimate adaptiveRegret(String cumulativeOutput, String perTurnOutput, int maxSteps, Scenario scenario,
+                                         boolean logSpacedLocal, double halfWidth, int batch, int maxReplications,
+                                         long seed, ForkJoinPool pool) throws IOException {
+        RegretCurve[] curves = {RegretCurve.logSpaced(maxSteps), localCurve(maxSteps, logSpacedLocal)};
+        double[] finalRegret = new double[maxReplications];
+
+        RegretEstimate r;
+        int done = 0;
+        do {
+            int end = Math.min(maxReplications, done + batch);
+            RegretCurve[] x = pool.invoke(new ReplicationTask(done, end, curves[0], curves[1], scenario, seed, finalRegret));
+            curves[0].merge(x[0]);
+            curves[1].merge(x[1]);
+            done = end;
+            r = RegretEstimate.of(finalRegret, done, halfWidth);
+        } while (!r.isConverged() && done < maxReplications);
+
+        printRegret(cumulativeOutput, curves[0]);
+        printRegret(perTurnOutput, curves[1]);
+        return r;
+    }
+
+    static RegretEstimate pairedRegret(int maxSteps, Scenario first, Scenario second,
+                                       double halfWidth, int batch, int maxReplications, long seed, ForkJoinPool pool) {
+        double[] a = new double[maxReplications];
+        double[] b = new double[maxReplications];
+        double[] difference = new double[maxReplications];
+
+        RegretEstimate r;
+        int done = 0;
+        do {
+            int end = Math.min(maxReplications, done + batch);
+            // only the final regret is compared so no curves are kept
+            pool.invoke(new ReplicationTask(done, end, null, null, first, seed, a));
+            pool.invoke(new ReplicationTask(done, end, null, null, second, seed, b));
+            for (int j = done; j < end; j++) {
+                difference[j] = a[j] - b[j];
+            }
+            done = end;
+            r = RegretEstimate.of(difference, done, halfWidth);
+        } while (!r.isConverged() && done < maxReplications);
+        return r;
+    }
+
+    private static double regret(String cumulativeOutput, String perTurnOutput, int replications, int maxSteps,
+                                 Scenario scenario, long seed, ForkJoinPool pool) throws IOException {
+        RegretCurve cumulative = RegretCurve.logSpaced(maxSteps);
+        RegretCurve local = localCurve(maxSteps, false);
+        double[] finalRegret = new double[replications];
+
+        RegretCurve[] curves = pool.invoke(new ReplicationTask(0, replications, cumulative, local, scenario, seed, finalRegret));
+
+        printRegret(cumulativeOutput, curves[0]);
+        printRegret(perTurnOutput, curves[1]);
+
+        Arrays.sort(finalRegret);
+        int mid = replications / 2;
+        return replications % 2 == 1 ? finalRegret[mid] : (finalRegret[mid - 1] + finalRegret[mid]) / 2;
+    }
+
+    /**
+     * Describes how a single replication is run.
+     */
+    abstract static class Scenario {
+        /**
+         * Runs a single replication, adding its regret into the curves.
+         *
+         * @param cumulative Where to add the cumulative regret at each checkpoint or null to skip it.
+         * @param local      Where to add the regret for each step or null to skip it.
+         * @return The cumulative regret at the last checkpoint or after the last step if there are
+         *         no checkpoints.
+         */
+        abstract double replicate(Random gen, RegretCurve cumulative, RegretCurve local);
+    }
+
+    /**
+     * Arms with fixed reward distributions.
+     */
+    private static class StationaryScenario extends Scenario {
+        private final int bandits;
+        private final int maxSteps;
+        private final BanditFactory modelFactory;
+        private final DistributionGenerator refSampler;
+
+        private StationaryScenario(int bandits, int maxSteps, BanditFactory modelFactory, DistributionGenerator refSampler) {
+            this.bandits = bandits;
+            this.maxSteps = maxSteps;
+            this.modelFactory = modelFactory;
+            this.refSampler = refSampler;
+        }
 
+        @Override
+        double replicate(Random gen, RegretCurve cumulative, RegretCurve local) {
+            // the arms are drawn first so that every solver run with the same seed sees the same arms
             List<DistributionWithMean> refs = Lists.newArrayList();
             for (int k = 0; k < bandits; k++) {
-                refs.add(refSampler.nextDistribution());
+                refs.add(refSampler.nextDistribution(gen));
             }
+            BayesianBandit s = modelFactory.createBandit(bandits, gen);
 
             Collections.sort(refs);
 
-            double wins = 0;
+            double bestMean = refs.get(bandits - 1).getMean();
             int k = 0;
-            int delta = 1;
             double totalRegret = 0;
+            double lastCheckpoint = 0;
             for (int i = 0; i < maxSteps; i++) {
-                if (i > 50 * delta) {
-                    delta = bump(delta);
-                }
                 int choice = s.sample();
                 double r = refs.get(choice).nextDouble();
 
-                totalRegret += refs.get(bandits - 1).getMean() - refs.get(choice).getMean();
-                if ((i + 1) % delta == 0) {
-                    if (cumulativeRegret.size() <= k) {
-                        cumulativeRegret.add(new OnlineSummarizer());
-                        steps.add(i + 1);
+                double thisTrialRegret = bestMean - refs.get(choice).getMean();
+                totalRegret += thisTrialRegret;
+                if (cumulative != null && k < cumulative.size() && i + 1 == cumulative.end(k)) {
+                    cumulative.add(k, totalRegret);
+                    lastCheckpoint = totalRegret;
+                    k++;
+                }
+                if (local != null) {
+                    int bucket = local.bucket(i);
+                    if (bucket >= 0) {
+                        local.add(bucket, thisTrialRegret);
                     }
-                    cumulativeRegret.get(k).add(totalRegret);
+                }
+                s.train(choice, r);
+            }
+            return cumulative == null ? totalRegret : lastCheckpoint;
+        }
+    }
+
+    /**
+     * Bernoulli arms whose probabilities follow Metropolis walks.
+     */
+    private static class DriftingScenario extends Scenario {
+        private final int bandits;
+        private final int maxSteps;
+        private final BanditFactory modelFactory;
+        private final double alpha;
+        private final double beta;
+        private final double stepSize;
+
+        private DriftingScenario(int bandits, int maxSteps, BanditFactory modelFactory, double alpha, double beta, double stepSize) {
+            this.bandits = bandits;
+            this.maxSteps = maxSteps;
+            this.modelFactory = modelFactory;
+            this.alpha = alpha;
+            this.beta = beta;
+            this.stepSize = stepSize;
+        }
+
+        @Override
+        double replicate(Random gen, RegretCurve cumulative, RegretCurve local) {
+            BetaWalkArray arms = new BetaWalkArray(bandits, alpha, beta, stepSize, gen);
+            BayesianBandit s = modelFactory.createBandit(bandits, gen);
+            double[] p = arms.getProbabilities();
+
+            int k = 0;
+            double totalRegret = 0;
+            double lastCheckpoint = 0;
+            for (int i = 0; i < maxSteps; i++) {
+                int choice = s.sample();
+                int r = arms.nextReward(choice);
+
+                double thisTrialRegret = arms.getMax() - p[choice];
+                totalRegret += thisTrialRegret;
+                if (cumulative != null && k < cumulative.size() && i + 1 == cumulative.end(k)) {
+                    cumulative.add(k, totalRegret);
+                    lastCheckpoint = totalRegret;
                     k++;
                 }
-                if (localRegret.size() <= i / BUCKET_SIZE) {
-                    localRegret.add(new OnlineSummarizer());
-                    localSteps.add(i);
+                if (local != null) {
+                    int bucket = local.bucket(i);
+                    if (bucket >= 0) {
+                        local.add(bucket, thisTrialRegret);
+                    }
                 }
-                double thisTrialRegret = refs.get(bandits - 1).getMean() - refs.get(choice).getMean();
-                localRegret.get(i / BUCKET_SIZE).add(thisTrialRegret);
-                wins += r;
                 s.train(choice, r);
+                arms.step();
             }
+            return cumulative == null ? totalRegret : lastCheckpoint;
         }
+    }
 
-        printRegret(cumulativeOutput, cumulativeRegret, steps);
-        printRegret(perTurnOutput, localRegret, localSteps);
-        return cumulativeRegret.get(cumulativeRegret.size() - 1).getMedian();
+    /**
+     * Derives a well mixed seed for each replication so that neighboring replications
+     * don't get correlated generators.
+     */
+    private static long replicationSeed(long seed, int replication) {
+        long z = seed + (replication + 1) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
     }
 
-    private static void printRegret(String outputFile, List<OnlineSummarizer> cumulativeRegret, List<Integer> steps) throws FileNotFoundException {
-        try (PrintWriter out = new PrintWriter(outputFile)) {
-            out.printf("n\tmean\n");
-            int k = 0;
-            for (OnlineSummarizer summary : cumulativeRegret) {
-                out.printf("%d\t%.4f\n", steps.get(k++), summary.getMean());
-//        for (int quartile = 0; quartile <= 4; quartile++) {
-//          out.printf("%.3f%s", summary.getQuartile(quartile), quartile < 4 ? "\t" : "\n");
-//        }
+    private static synchronized ForkJoinPool defaultPool() {
+        if (defaultPool == null) {
+            defaultPool = new ForkJoinPool();
+        }
+        return defaultPool;
+    }
+
+    /**
+     * Runs a range of replications by splitting the range in half until only a few are left.
+     * Curves that are null are not recorded and come back as null.
+     */
+    @SuppressWarnings("serial")
+    private static class ReplicationTask extends RecursiveTask<RegretCurve[]> {
+        private final int start;
+        private final int end;
+        private final RegretCurve cumulative;
+        private final RegretCurve local;
+        private final Scenario scenario;
+        private final long seed;
+        private final double[] finalRegret;
+
+        private ReplicationTask(int start, int end, RegretCurve cumulative, RegretCurve local,
+                                Scenario scenario, long seed, double[] finalRegret) {
+            this.start = start;
+            this.end = end;
+            this.cumulative = cumulative;
+            this.local = local;
+            this.scenario = scenario;
+            this.seed = seed;
+            this.finalRegret = finalRegret;
+        }
+
+        @Override
+        protected RegretCurve[] compute() {
+            if (end - start <= REPLICATIONS_PER_TASK) {
+                RegretCurve[] curves = {
+                        cumulative == null ? null : cumulative.emptyCopy(),
+                        local == null ? null : local.emptyCopy()
+                };
+                for (int j = start; j < end; j++) {
+                    Random gen = new Random(replicationSeed(seed, j));
+                    finalRegret[j] = scenario.replicate(gen, curves[0], curves[1]);
+                }
+                return curves;
+            } else {
+                int mid = (start + end) >>> 1;
+                ReplicationTask left = new ReplicationTask(start, mid, cumulative, local, scenario, seed, finalRegret);
+                ReplicationTask right = new ReplicationTask(mid, end, cumulative, local, scenario, seed, finalRegret);
+                right.fork();
+                RegretCurve[] r = left.compute();
+                RegretCurve[] other = right.join();
+                for (int i = 0; i < r.length; i++) {
+                    if (r[i] != null) {
+                        r[i].merge(other[i]);
+                    }
+                }
+                return r;
             }
-            out.flush();
         }
     }
 
-    private static int bump(int delta) {
-        int multiplier = 1;
-        while (delta >= 10) {
-            multiplier *= 10;
-            delta /= 10;
+    private static void printRegret(String outputFile, RegretCurve curve) throws IOException {
+        try (ResultSink out = ResultSink.open(outputFile, "n", "mean")) {
+            curve.write(out);
         }
-        // steps each of 1,2,5 up to next level
-        delta = (int) (4 * delta - delta * delta / 3 - 1.5);
-        return delta * multiplier;
     }
 }
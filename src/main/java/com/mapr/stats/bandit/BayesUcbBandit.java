@@ -0,0 +1,40 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mapr.stats.bandit;
+
+import com.mapr.stats.random.BetaDistribution;
+
+/**
+ * The Bayes-UCB policy of Kaufmann, Capp&eacute; and Garivier for rewards in [0,1].  The index for
+ * each arm is the \(1 - 1/t\) quantile of the beta posterior for that arm's mean reward
+ * where \(t\) is the total number of trials.  A uniform prior is used.
+ */
+public class BayesUcbBandit extends IndexBandit {
+    private final BetaDistribution bd = new BetaDistribution(1, 1);
+
+    public BayesUcbBandit(int bandits) {
+        super(bandits);
+    }
+
+    @Override
+    protected double index(long n, double sum, long horizon) {
+        bd.setAlpha(1 + sum);
+        bd.setBeta(1 + n - sum);
+        return bd.quantile(1 - 1.0 / (horizon + 1));
+    }
+}
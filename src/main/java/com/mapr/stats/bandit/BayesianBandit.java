@@ -19,13 +19,10 @@ package com.mapr.stats.bandit;
 
 import com.google.common.collect.Iterators;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Maps;
-import com.google.common.collect.Ordering;
 import com.mapr.stats.random.AbstractBayesianDistribution;
 
 import java.util.Iterator;
 import java.util.List;
-import java.util.Map;
 
 /**
  * Implements the common characteristics of the Bayesian Bandit.  All that is
@@ -44,25 +41,47 @@ public abstract class BayesianBandit implements Iterable<AbstractBayesianDistrib
     private final List<AbstractBayesianDistribution> bd = Lists.newArrayList();
 
     /**
-     * Samples probability estimates from each bandit and picks the apparent best
+     * Samples probability estimates from each bandit and picks the apparent best.  The samples
+     * are compared as they are drawn so that nothing is allocated.  A subclass that overrides
+     * {@link #sampleAll(double[])} should override this as well.
      *
-     * @return 0 or 1 according to which bandit seems better
+     * @return The index of the bandit that seems best or -1 if there are no bandits.
      */
     public int sample() {
         double max = Double.NEGATIVE_INFINITY;
         int r = -1;
-        int i = 0;
-        for (AbstractBayesianDistribution dist : bd) {
-            double p = dist.nextMean();
-            if (p > max) {
+        // indexing avoids creating an iterator
+        for (int i = 0; i < bd.size(); i++) {
+            double score = bd.get(i).nextMean();
+            if (score > max) {
                 r = i;
-                max = p;
+                max = score;
             }
-            i++;
         }
         return r;
     }
 
+    /**
+     * Samples a score for every bandit.  The apparent best bandit is the one with the largest
+     * score and ranking the bandits is just a matter of sorting the scores.  For a Bayesian
+     * bandit, the scores are samples of the mean from each posterior.
+     *
+     * @param scores Where to put the scores.  Must have room for {@link #size()} values.
+     */
+    public void sampleAll(double[] scores) {
+        int i = 0;
+        for (AbstractBayesianDistribution dist : bd) {
+            scores[i++] = dist.nextMean();
+        }
+    }
+
+    /**
+     * Returns the number of bandits.
+     */
+    public int size() {
+        return bd.size();
+    }
+
     /**
      * Apply feedback to the bandit we chose.
      *
@@ -78,27 +97,14 @@ public abstract class BayesianBandit implements Iterable<AbstractBayesianDistrib
     }
 
     /**
-     * Samples probability estimates from each bandit and orders the bandits in increasing order.
+     * Samples probability estimates from each bandit and orders the bandits in decreasing order.
      * @param sampleSize The number of bandits to sample.
      * @return A list of the indexes of the bandits.
      */
     public List<Integer> rank(int sampleSize) {
-        Map<Double, Integer> tmp = Maps.newTreeMap(Ordering.natural().reverse());
-        int i = 0;
-        for (AbstractBayesianDistribution dist : bd) {
-            double p = dist.nextMean();
-            tmp.put(p, i);
-            i++;
-        }
-
-        List<Integer> r = Lists.newArrayList();
-        for (Double key : tmp.keySet()) {
-            r.add(tmp.get(key));
-            if (r.size() >= sampleSize) {
-                break;
-            }
-        }
-        return r;
+        double[] scores = new double[size()];
+        sampleAll(scores);
+        return TopK.select(scores, sampleSize);
     }
 
     /**
@@ -17,15 +17,31 @@
 
 package com.mapr.stats.bandit;
 
+import com.mapr.stats.random.BetaQuantileCache;
+
 import java.util.Random;
 
 /**
  * Factory that creates a BetaBayesModel for solving a
- * multi-armed bandit with binary {0,1} rewards.
+ * multi-armed bandit with binary {0,1} rewards.  The models can optionally sample
+ * from shared quantile tables.
  */
 public class BetaBayesFactory extends BanditFactory {
+    private final BetaQuantileCache quantiles;
+
+    public BetaBayesFactory() {
+        this(null);
+    }
+
+    /**
+     * @param quantiles The tables that all models will share or null to sample directly.
+     */
+    public BetaBayesFactory(BetaQuantileCache quantiles) {
+        this.quantiles = quantiles;
+    }
+
     @Override
     public BayesianBandit createBandit(int bandits, Random gen) {
-        return new BetaBayesModel(bandits, gen);
+        return new BetaBayesModel(bandits, gen, quantiles);
     }
 }
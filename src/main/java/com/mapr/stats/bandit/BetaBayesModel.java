@@ -19,6 +19,7 @@ package com.mapr.stats.bandit;
 
 
 import com.mapr.stats.random.BetaBinomialDistribution;
+import com.mapr.stats.random.BetaQuantileCache;
 import org.apache.mahout.common.RandomUtils;
 
 import java.util.Random;
@@ -27,6 +28,9 @@ import java.util.Random;
  * Multi-armed bandit problem where each probability is modeled by a beta prior and data about
  * positive and negative trials.  An arm is selected by sampling from the current posterior
  * for each arm and picking the one with higher sampled probability.
+ * <p/>
+ * Posteriors are sampled directly unless a {@link BetaQuantileCache} is given, in which case arms
+ * with few observations are sampled from its quantile tables.
  */
 public class BetaBayesModel extends BayesianBandit {
 
@@ -35,8 +39,15 @@ public class BetaBayesModel extends BayesianBandit {
     }
 
     public BetaBayesModel(int bandits, Random gen) {
+        this(bandits, gen, null);
+    }
+
+    /**
+     * @param quantiles The tables to sample small posteriors from or null to always sample directly.
+     */
+    public BetaBayesModel(int bandits, Random gen, BetaQuantileCache quantiles) {
         for (int i = 0; i < bandits; i++) {
-            addModelDistribution(new BetaBinomialDistribution(1, 1, gen));
+            addModelDistribution(new BetaBinomialDistribution(1, 1, gen, quantiles));
         }
     }
 }
@@ -0,0 +1,240 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mapr.stats.bandit;
+
+import com.google.common.collect.AbstractIterator;
+import com.mapr.stats.random.AbstractBayesianDistribution;
+import com.mapr.stats.random.BetaBinomialDistribution;
+import com.mapr.stats.random.BetaDistribution;
+import com.mapr.stats.random.BetaQuantileCache;
+import org.apache.mahout.math.jet.random.AbstractContinousDistribution;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A beta-binomial bandit that keeps its per-arm state in {@link CompactCounts}.
+ * <p/>
+ * This behaves just like {@link BetaBayesModel} but instead of a distribution object per arm,
+ * each arm costs a single int.  The prior is shared by all arms.  That makes it possible to keep
+ * the state for a very large catalog in cache while ranking.
+ * <p/>
+ * When the prior parameters are integers, arms with small counts are sampled from the shared
+ * {@link BetaQuantileCache}.  The tables are looked up in the cache for every sample rather than
+ * copied so that all models share one bounded set of tables.
+ */
+public class CompactBetaBayesModel extends BayesianBandit {
+    private final CompactCounts counts;
+    private final double alpha0;
+    private final double beta0;
+    private final Random gen;
+    private final BetaDistribution bd;
+
+    private final BetaQuantileCache quantiles;
+
+    public CompactBetaBayesModel(int bandits, Random gen) {
+        this(bandits, 1, 1, gen);
+    }
+
+    public CompactBetaBayesModel(int bandits, double alpha0, double beta0, Random gen) {
+        this.counts = new CompactCounts(bandits);
+        this.alpha0 = alpha0;
+        this.beta0 = beta0;
+        this.gen = gen;
+        this.bd = new BetaDistribution(alpha0, beta0, gen);
+        this.quantiles = BetaQuantileCache.getShared();
+    }
+
+    /**
+     * Picks the apparent best arm.  This streams over the arms rather than filling an array of
+     * scores so that ranking a very large catalog doesn't need memory proportional to its size.
+     */
+    @Override
+    public int sample() {
+        double max = Double.NEGATIVE_INFINITY;
+        int r = -1;
+        for (int i = 0; i < counts.size(); i++) {
+            double p = nextMean(i);
+            if (p > max) {
+                r = i;
+                max = p;
+            }
+        }
+        return r;
+    }
+
+    @Override
+    public void sampleAll(double[] scores) {
+        for (int i = 0; i < counts.size(); i++) {
+            scores[i] = nextMean(i);
+        }
+    }
+
+    @Override
+    public int size() {
+        return counts.size();
+    }
+
+    @Override
+    public List<Integer> rank(int sampleSize) {
+        TopK top = new TopK(Math.min(sampleSize, counts.size()));
+        for (int i = 0; i < counts.size(); i++) {
+            top.offer(i, nextMean(i));
+        }
+        return top.toList();
+    }
+
+    @Override
+    public void train(int bandit, double reward) {
+        if (reward == 0.0) {
+            counts.increment(bandit, false);
+        } else if (reward == 1) {
+            counts.increment(bandit, true);
+        } else {
+            throw new IllegalArgumentException("Samples for beta-binomial distribution must be 0 or 1");
+        }
+    }
+
+    @Override
+    public boolean addModelDistribution(AbstractBayesianDistribution distribution) {
+        throw new UnsupportedOperationException("Can't add a distribution to a compact model");
+    }
+
+    @Override
+    public double getMean(int k) {
+        double alpha = alpha(k);
+        return alpha / (alpha + beta(k));
+    }
+
+    /**
+     * Returns views of each arm.  The views share state with this model.
+     */
+    @Override
+    public Iterator<AbstractBayesianDistribution> iterator() {
+        return new AbstractIterator<AbstractBayesianDistribution>() {
+            int i = 0;
+
+            @Override
+            protected AbstractBayesianDistribution computeNext() {
+                if (i < counts.size()) {
+                    return new Arm(i++);
+                } else {
+                    return endOfData();
+                }
+            }
+        };
+    }
+
+    /**
+     * Returns the count store for inspection.
+     */
+    public CompactCounts getCounts() {
+        return counts;
+    }
+
+    private double alpha(int i) {
+        return alpha0 + counts.successes(i);
+    }
+
+    private double beta(int i) {
+        return beta0 + counts.failures(i);
+    }
+
+    private double nextMean(int i) {
+        double alpha = alpha(i);
+        double beta = beta(i);
+        double[] table = table(alpha, beta);
+        if (table != null) {
+            return BetaQuantileCache.nextDouble(table, gen);
+        }
+        return bd.nextDouble(alpha, beta);
+    }
+
+    private void nextMeans(int i, double[] out, int offset, int count) {
+        double alpha = alpha(i);
+        double beta = beta(i);
+        double[] table = table(alpha, beta);
+        if (table != null) {
+            for (int j = 0; j < count; j++) {
+                out[offset + j] = BetaQuantileCache.nextDouble(table, gen);
+            }
+        } else {
+            for (int j = 0; j < count; j++) {
+                out[offset + j] = bd.nextDouble(alpha, beta);
+            }
+        }
+    }
+
+    /**
+     * Returns the quantile table for an arm with the given parameters, or null if these
+     * parameters aren't tabulated.
+     */
+    private double[] table(double alpha, double beta) {
+        if (!quantiles.isTabulated(alpha, beta)) {
+            return null;
+        }
+        return quantiles.table((int) alpha, (int) beta);
+    }
+
+    /**
+     * A view of a single arm.
+     */
+    private class Arm extends AbstractBayesianDistribution {
+        private final int i;
+
+        private Arm(int i) {
+            this.i = i;
+        }
+
+        @Override
+        public double nextDouble() {
+            return gen.nextDouble() < getMean() ? 1 : 0;
+        }
+
+        @Override
+        public void add(double x) {
+            train(i, x);
+        }
+
+        @Override
+        public double nextMean() {
+            return CompactBetaBayesModel.this.nextMean(i);
+        }
+
+        @Override
+        public void nextMeans(double[] out, int offset, int count) {
+            CompactBetaBayesModel.this.nextMeans(i, out, offset, count);
+        }
+
+        @Override
+        public AbstractContinousDistribution posteriorDistribution() {
+            return new BetaBinomialDistribution(alpha(i), beta(i), gen).posteriorDistribution();
+        }
+
+        @Override
+        public double getMean() {
+            return CompactBetaBayesModel.this.getMean(i);
+        }
+
+        @Override
+        public double getSamples() {
+            return alpha(i) + beta(i);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mapr.stats.bandit;
+
+import com.google.common.collect.Maps;
+
+import java.util.Map;
+
+/**
+ * Stores success and failure counts for many arms in a single int per arm.
+ * <p/>
+ * The low 16 bits of each entry hold the number of successes and the high 16 bits hold the
+ * number of failures.  Almost all arms in a long-tailed catalog have far fewer than 65535
+ * observations so this is enough.  The rare arm that overflows either count is moved to a
+ * side table that holds full-width counts and its packed entry is set to a marker value.
+ */
+public class CompactCounts {
+    private static final int LANE_MASK = 0xffff;
+    // both lanes full is never a valid packed value because we spill before that
+    private static final int SPILLED = 0xffffffff;
+
+    private final int[] packed;
+    private final Map<Integer, long[]> spill = Maps.newHashMap();
+
+    public CompactCounts(int size) {
+        packed = new int[size];
+    }
+
+    public int size() {
+        return packed.length;
+    }
+
+    public long successes(int i) {
+        int x = packed[i];
+        if (x == SPILLED) {
+            return spill.get(i)[0];
+        }
+        return x & LANE_MASK;
+    }
+
+    public long failures(int i) {
+        int x = packed[i];
+        if (x == SPILLED) {
+            return spill.get(i)[1];
+        }
+        return x >>> 16;
+    }
+
+    /**
+     * Records a single observation.
+     *
+     * @param i       Which arm was observed.
+     * @param success Whether the observation was a success.
+     */
+    public void increment(int i, boolean success) {
+        int x = packed[i];
+        if (x == SPILLED) {
+            spill.get(i)[success ? 0 : 1]++;
+        } else if (success) {
+            if ((x & LANE_MASK) == LANE_MASK - 1) {
+                spill(i, (x & LANE_MASK) + 1, x >>> 16);
+            } else {
+                packed[i] = x + 1;
+            }
+        } else {
+            if (x >>> 16 == LANE_MASK - 1) {
+                spill(i, x & LANE_MASK, (x >>> 16) + 1);
+            } else {
+                packed[i] = x + (1 << 16);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of arms whose counts have overflowed into the side table.
+     */
+    public int spilled() {
+        return spill.size();
+    }
+
+    private void spill(int i, long successes, long failures) {
+        spill.put(i, new long[]{successes, failures});
+        packed[i] = SPILLED;
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mapr.stats.bandit;
+
+import org.apache.mahout.math.Matrix;
+import org.apache.mahout.math.Vector;
+
+import java.util.Iterator;
+
+/**
+ * A read-only matrix in compressed sparse row form.  The non-zero values of row i are in
+ * values[rowStart[i]] through values[rowStart[i+1]-1] and the corresponding column indexes
+ * are in the same positions of columns.
+ * <p/>
+ * This is used for feature maps where each arm has only a few non-zero features out of a very
+ * large number.  Multiplying by a vector costs time proportional to the number of non-zero
+ * elements rather than to the size of the matrix.
+ */
+public class CompressedRowMatrix {
+    private final int numCols;
+    final int[] rowStart;
+    final int[] columns;
+    final double[] values;
+
+    /**
+     * Builds a matrix directly from its compressed representation.  The arrays are not copied.
+     *
+     * @param numCols  The number of columns in the matrix.
+     * @param rowStart Offsets of the start of each row.  Must have one more element than there are rows.
+     * @param columns  Column index for each non-zero value.
+     * @param values   The non-zero values.
+     */
+    public CompressedRowMatrix(int numCols, int[] rowStart, int[] columns, double[] values) {
+        if (columns.length != values.length || rowStart[rowStart.length - 1] != values.length) {
+            throw new IllegalArgumentException("Inconsistent sizes for compressed row matrix");
+        }
+        this.numCols = numCols;
+        this.rowStart = rowStart;
+        this.columns = columns;
+        this.values = values;
+    }
+
+    /**
+     * Copies the non-zero elements of a Mahout matrix.  Rows that are sparse vectors, such as those
+     * of a {@link org.apache.mahout.math.SparseRowMatrix}, are copied without visiting their zeros.
+     */
+    public static CompressedRowMatrix copyOf(Matrix m) {
+        int rows = m.numRows();
+        int[] rowStart = new int[rows + 1];
+        int nonZeros = 0;
+        for (int i = 0; i < rows; i++) {
+            nonZeros += countNonZero(m.viewRow(i));
+        }
+
+        int[] columns = new int[nonZeros];
+        double[] values = new double[nonZeros];
+        int k = 0;
+        for (int i = 0; i < rows; i++) {
+            rowStart[i] = k;
+            Vector row = m.viewRow(i);
+            if (row.isDense()) {
+                for (int j = 0; j < row.size(); j++) {
+                    double v = row.getQuick(j);
+                    if (v != 0) {
+                        columns[k] = j;
+                        values[k++] = v;
+                    }
+                }
+            } else {
+                Iterator<Vector.Element> nz = row.iterateNonZero();
+                while (nz.hasNext()) {
+                    Vector.Element element = nz.next();
+                    if (element.get() != 0) {
+                        columns[k] = element.index();
+                        values[k++] = element.get();
+                    }
+                }
+            }
+        }
+        rowStart[rows] = k;
+        return new CompressedRowMatrix(m.numCols(), rowStart, columns, values);
+    }
+
+    public int numRows() {
+        return rowStart.length - 1;
+    }
+
+    public int numCols() {
+        return numCols;
+    }
+
+    public int numNonZeros() {
+        return values.length;
+    }
+
+    /**
+     * Computes the dot product of a row with a vector.
+     */
+    public double dot(int row, double[] x) {
+        double sum = 0;
+        for (int k = rowStart[row]; k < rowStart[row + 1]; k++) {
+            sum += values[k] * x[columns[k]];
+        }
+        return sum;
+    }
+
+    /**
+     * Multiplies this matrix by a vector.
+     *
+     * @param x   The vector to multiply by.  Must have numCols() elements.
+     * @param out Where to put the result.  Must have numRows() elements.
+     */
+    public void times(double[] x, double[] out) {
+        for (int i = 0; i < out.length; i++) {
+            out[i] = dot(i, x);
+        }
+    }
+
+    private static int countNonZero(Vector row) {
+        int n = 0;
+        if (row.isDense()) {
+            for (int j = 0; j < row.size(); j++) {
+                if (row.getQuick(j) != 0) {
+                    n++;
+                }
+            }
+        } else {
+            Iterator<Vector.Element> nz = row.iterateNonZero();
+            while (nz.hasNext()) {
+                if (nz.next().get() != 0) {
+                    n++;
+                }
+            }
+        }
+        return n;
+    }
+}
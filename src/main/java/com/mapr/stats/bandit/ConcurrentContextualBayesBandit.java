@@ -0,0 +1,226 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mapr.stats.bandit;
+
+import org.apache.mahout.common.RandomUtils;
+import org.apache.mahout.math.Matrix;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A {@link ContextualBayesBandit} that can be trained and sampled from many threads at once.
+ * <p/>
+ * The per-feature counts are split into stripes and each thread adds its observations to the
+ * stripe selected by its thread id.  Additions are done with a compare-and-set on the bits of
+ * the double so no locks are needed and threads only contend when they share a stripe and
+ * touch the same feature at the same moment.
+ * <p/>
+ * Summing all of the stripes for every feature on every sample would make sampling cost grow
+ * with the number of stripes, so sampling uses a snapshot of the totals instead.  Each stripe
+ * also counts its updates.  The snapshot is rebuilt by the first sampling thread that finds
+ * updates that it doesn't include and either at least
+ * {@link #setRefreshInterval(int) refresh interval} of them or a snapshot older than the
+ * {@link #setMaxStaleness(long, TimeUnit) staleness limit}.  Other threads keep using the old
+ * snapshot while it is rebuilt.  Apart from samples that overlap a rebuild, a sample thus
+ * misses fewer than refresh interval updates and none made more than the staleness limit
+ * before the snapshot was built, so once training pauses the next sample after the limit sees
+ * every update.  {@link #getAlpha(int)} and {@link #getBeta(int)} always sum the stripes and
+ * so are exact once training stops.
+ * <p/>
+ * Snapshots are built alternately into two sets of arrays so that rebuilding allocates nothing.
+ * A sample that is still reading the older set while it is overwritten, which can only happen
+ * if it takes longer than a whole refresh, may see counts from two consecutive snapshots.
+ * <p/>
+ * By default there is a stripe per processor up to {@link #MAX_DEFAULT_STRIPES}.  Each stripe
+ * takes two longs per feature.
+ */
+public class ConcurrentContextualBayesBandit extends ContextualBayesBandit {
+    public static final int MAX_DEFAULT_STRIPES = 8;
+    public static final long DEFAULT_MAX_STALENESS_MILLIS = 1;
+
+    private final int stripeMask;
+    // stripe s holds the success count for feature j at 2 * j, the failure count at 2 * j + 1
+    // and the number of updates to the stripe at 2 * numFeatures()
+    private final AtomicLongArray[] stripes;
+    private final int updateSlot;
+
+    private volatile Snapshot snapshot;
+    private final AtomicBoolean refreshing = new AtomicBoolean(false);
+    private volatile int refreshInterval;
+    private volatile long maxStaleness = TimeUnit.MILLISECONDS.toNanos(DEFAULT_MAX_STALENESS_MILLIS);
+
+    // snapshots alternate between these, only touched by the thread that holds refreshing
+    private final double[][][] buffers;
+    private int nextBuffer = 0;
+
+    public ConcurrentContextualBayesBandit(Matrix featureMap) {
+        this(CompressedRowMatrix.copyOf(featureMap), 1, 1, RandomUtils.getRandom());
+    }
+
+    public ConcurrentContextualBayesBandit(CompressedRowMatrix featureMap, double alpha_0, double beta_0, Random gen) {
+        this(featureMap, alpha_0, beta_0, gen, Math.min(Runtime.getRuntime().availableProcessors(), MAX_DEFAULT_STRIPES));
+    }
+
+    /**
+     * @param stripes How many stripes to use.  This is rounded up to a power of two.
+     */
+    public ConcurrentContextualBayesBandit(CompressedRowMatrix featureMap, double alpha_0, double beta_0, Random gen, int stripes) {
+        super(featureMap, alpha_0, beta_0, gen);
+        int n = 1;
+        while (n < stripes) {
+            n *= 2;
+        }
+        stripeMask = n - 1;
+        updateSlot = 2 * numFeatures();
+        this.stripes = new AtomicLongArray[n];
+        for (int s = 0; s < n; s++) {
+            this.stripes[s] = new AtomicLongArray(updateSlot + 1);
+        }
+        refreshInterval = n;
+        int m = numFeatures();
+        buffers = new double[][][]{{new double[m], new double[m]}, {new double[m], new double[m]}};
+        snapshot = fold();
+    }
+
+    /**
+     * Sets how many updates can be missed by samples before the snapshot used for sampling is
+     * rebuilt.  Rebuilding reads every stripe, so the default is the number of stripes which
+     * keeps the cost of rebuilding per update about the same as the cost of an update.
+     */
+    public void setRefreshInterval(int refreshInterval) {
+        if (refreshInterval < 1) {
+            throw new IllegalArgumentException("Refresh interval must be positive");
+        }
+        this.refreshInterval = refreshInterval;
+    }
+
+    /**
+     * Sets how old a snapshot can get before a sample rebuilds it to include any updates that it
+     * is missing, no matter how few.  The default is {@value #DEFAULT_MAX_STALENESS_MILLIS} ms.
+     */
+    public void setMaxStaleness(long time, TimeUnit unit) {
+        if (time < 0) {
+            throw new IllegalArgumentException("Staleness limit can't be negative");
+        }
+        this.maxStaleness = unit.toNanos(time);
+    }
+
+    @Override
+    public double getAlpha(int feature) {
+        return super.getAlpha(feature) + sum(2 * feature);
+    }
+
+    @Override
+    public double getBeta(int feature) {
+        return super.getBeta(feature) + sum(2 * feature + 1);
+    }
+
+    @Override
+    public void train(int bandit, boolean success) {
+        AtomicLongArray stripe = stripes[(int) Thread.currentThread().getId() & stripeMask];
+        int offset = success ? 0 : 1;
+        int m = numFeatures();
+        for (int k = featureMap.rowStart[bandit]; k < featureMap.rowStart[bandit + 1]; k++) {
+            add(stripe, 2 * featureMap.columns[k] + offset, featureMap.values[k] / m);
+        }
+        // counted only after the counts are added so a snapshot includes every update it counts
+        stripe.incrementAndGet(updateSlot);
+    }
+
+    @Override
+    double[][] sampleCounts() {
+        Snapshot s = snapshot;
+        long missing = updates() - s.updates;
+        if (missing > 0 && (missing >= refreshInterval || System.nanoTime() - s.time >= maxStaleness)
+                && refreshing.compareAndSet(false, true)) {
+            try {
+                s = fold();
+                snapshot = s;
+            } finally {
+                refreshing.set(false);
+            }
+        }
+        return s.counts;
+    }
+
+    private long updates() {
+        long total = 0;
+        for (AtomicLongArray stripe : stripes) {
+            total += stripe.get(updateSlot);
+        }
+        return total;
+    }
+
+    /**
+     * Sums the prior and all stripes into the next buffer.  The update count is read first so
+     * that the snapshot has at least the updates it claims.
+     */
+    private Snapshot fold() {
+        long time = System.nanoTime();
+        long updates = updates();
+        int m = numFeatures();
+        double[][] counts = buffers[nextBuffer];
+        nextBuffer = 1 - nextBuffer;
+        double[] alpha = counts[0];
+        double[] beta = counts[1];
+        for (int j = 0; j < m; j++) {
+            alpha[j] = super.getAlpha(j);
+            beta[j] = super.getBeta(j);
+        }
+        for (AtomicLongArray stripe : stripes) {
+            for (int j = 0; j < m; j++) {
+                alpha[j] += Double.longBitsToDouble(stripe.get(2 * j));
+                beta[j] += Double.longBitsToDouble(stripe.get(2 * j + 1));
+            }
+        }
+        return new Snapshot(updates, time, counts);
+    }
+
+    private double sum(int i) {
+        double total = 0;
+        for (AtomicLongArray stripe : stripes) {
+            total += Double.longBitsToDouble(stripe.get(i));
+        }
+        return total;
+    }
+
+    private static void add(AtomicLongArray stripe, int i, double delta) {
+        while (true) {
+            long old = stripe.get(i);
+            long updated = Double.doubleToRawLongBits(Double.longBitsToDouble(old) + delta);
+            if (stripe.compareAndSet(i, old, updated)) {
+                return;
+            }
+        }
+    }
+
+    private static class Snapshot {
+        private final long updates;
+        private final long time;
+        private final double[][] counts;
+
+        private Snapshot(long updates, long time, double[][] counts) {
+            this.updates = updates;
+            this.time = time;
+            this.counts = counts;
+        }
+    }
+}
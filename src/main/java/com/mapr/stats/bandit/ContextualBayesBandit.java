@@ -18,72 +18,450 @@
 package com.mapr.stats.bandit;
 
 import com.mapr.stats.random.BetaDistribution;
-import org.apache.mahout.math.DenseMatrix;
+import org.apache.mahout.common.RandomUtils;
+import org.apache.mahout.math.DenseVector;
 import org.apache.mahout.math.Matrix;
 import org.apache.mahout.math.Vector;
 import org.apache.mahout.math.function.DoubleFunction;
-import org.apache.mahout.math.function.Functions;
-import org.apache.mahout.math.function.VectorFunction;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
 
 /**
  * Solves the contextual bandit problem using Bayesian sampling.
+ * <p/>
+ * The feature map is kept in compressed sparse row form so that scoring and training cost
+ * time proportional to the number of non-zero features for each arm.  Dense matrices work
+ * as well, but a {@link org.apache.mahout.math.SparseRowMatrix} or a
+ * {@link CompressedRowMatrix} avoids materializing the zeros in the first place.
+ * <p/>
+ * The per-feature state is kept in primitive arrays and {@link #sample()} and
+ * {@link #rank(int[])} work entirely in per-thread scratch arrays so that they don't
+ * allocate anything once those arrays exist.
+ * <p/>
+ * Many requests can be served at once with {@link #sampleBatch(int[])} or
+ * {@link #rankBatch(int[][])}.  These draw an independent theta for each request and score
+ * all of the requests together so that each non-zero of the feature map is read once per
+ * block of requests instead of once per request.
+ * <p/>
+ * For very large numbers of arms, {@link #setParallelScoring(ForkJoinPool, int)} allows
+ * {@link #sample()} and {@link #rank(int[])} to score blocks of arms in parallel.  Each
+ * block keeps its own top k and these are merged at the end.
+ * <p/>
+ * With {@link #setFastLink(boolean)}, the link functions are computed using the table driven
+ * approximations in {@link FastLink}.  Note that {@link #sample()}, {@link #rank(int[])} and the
+ * batch methods never apply the logistic function since it doesn't change the order of the arms.
+ * <p/>
+ * Sampling may be done from many threads at once, but training may not.  Use
+ * {@link ConcurrentContextualBayesBandit} if training and sampling happen in different threads.
+ * Each sampling thread has its own generator, seeded from the one given to the constructor when
+ * that thread first samples, so threads don't contend for a shared seed.  A single thread
+ * always gets the same samples for the same seed.
  */
 public class ContextualBayesBandit {
-    private final Matrix featureMap;
-    private final Matrix state;
+    // how many requests are scored together in a batch
+    private static final int REQUEST_BLOCK = 64;
+    // how many arms are scored by a single parallel task
+    private static final int ARM_BLOCK = 4096;
+
+    final CompressedRowMatrix featureMap;
+    private final double[] alpha;
+    private final double[] beta;
     private final int m;
-    private final BetaDistribution rand;
+    // {alpha, beta} as returned by sampleCounts()
+    private final double[][] counts;
+    private final Random gen;
+
+    private boolean fastLink = false;
+    private ForkJoinPool pool = null;
+    private int parallelThreshold = Integer.MAX_VALUE;
+
+    private final ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>() {
+        @Override
+        protected Scratch initialValue() {
+            return new Scratch(new BetaDistribution(1, 1, new Random(gen.nextLong())));
+        }
+    };
 
     public ContextualBayesBandit(Matrix featureMap) {
         this(featureMap, 1, 1);
     }
 
     public ContextualBayesBandit(Matrix featureMap, double alpha_0, double beta_0) {
+        this(CompressedRowMatrix.copyOf(featureMap), alpha_0, beta_0);
+    }
+
+    public ContextualBayesBandit(CompressedRowMatrix featureMap) {
+        this(featureMap, 1, 1);
+    }
+
+    public ContextualBayesBandit(CompressedRowMatrix featureMap, double alpha_0, double beta_0) {
+        this(featureMap, alpha_0, beta_0, RandomUtils.getRandom());
+    }
+
+    public ContextualBayesBandit(CompressedRowMatrix featureMap, double alpha_0, double beta_0, Random gen) {
         this.featureMap = featureMap;
         m = featureMap.numCols();
-        this.state = new DenseMatrix(m, 2);
-        this.state.viewColumn(0).assign(alpha_0);
-        this.state.viewColumn(1).assign(beta_0);
-        this.rand = new BetaDistribution(1, 1);
+        alpha = new double[m];
+        beta = new double[m];
+        for (int j = 0; j < m; j++) {
+            alpha[j] = alpha_0;
+            beta[j] = beta_0;
+        }
+        this.counts = new double[][]{alpha, beta};
+        this.gen = gen;
     }
 
     public Vector samplePi() {
-        return sampleNoLink().assign(new LogisticFunction());
+        double[] pi = new double[featureMap.numRows()];
+        sampleScores(pi);
+        if (fastLink) {
+            FastLink.logistic(pi, pi.length);
+        } else {
+            for (int i = 0; i < pi.length; i++) {
+                pi[i] = logistic(pi[i]);
+            }
+        }
+        return new DenseVector(pi, true);
+    }
+
+    /**
+     * Selects whether link functions are computed exactly or with fast approximations.
+     */
+    public void setFastLink(boolean fastLink) {
+        this.fastLink = fastLink;
+    }
+
+    /**
+     * Enables parallel scoring when there are many arms.
+     *
+     * @param pool      The pool to run scoring tasks in, or null to always score sequentially.
+     * @param threshold Scoring is only done in parallel if there are at least this many arms.
+     */
+    public void setParallelScoring(ForkJoinPool pool, int threshold) {
+        this.pool = pool;
+        this.parallelThreshold = threshold;
     }
 
     public int sample() {
-        final Vector pi = sampleNoLink();
-        return pi.maxValueIndex();
+        final double[] theta = sampleTheta();
+        if (isParallel()) {
+            int[] r = new int[1];
+            pool.invoke(new ScoringTask(theta, 0, featureMap.numRows(), 1)).drainTo(r);
+            return r[0];
+        }
+        int best = -1;
+        double max = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < featureMap.numRows(); i++) {
+            double score = featureMap.dot(i, theta);
+            if (best < 0 || score > max) {
+                best = i;
+                max = score;
+            }
+        }
+        return best;
     }
 
-    private Vector sampleNoLink() {
-        final Vector theta = state.aggregateRows(new VectorFunction() {
-            final DoubleFunction inverseLink = new InverseLogisticFunction();
+    /**
+     * Samples a score for each arm and returns the arms with the highest scores.
+     *
+     * @param top Where to put the arms, best first.  Up to top.length arms are returned.
+     * @return The number of arms returned.
+     */
+    public int rank(int[] top) {
+        final Scratch s = scratch.get();
+        final double[] theta = sampleTheta();
+        if (isParallel()) {
+            int k = Math.min(top.length, featureMap.numRows());
+            return pool.invoke(new ScoringTask(theta, 0, featureMap.numRows(), k)).drainTo(top);
+        }
+        TopK best = s.top(Math.min(top.length, featureMap.numRows()));
+        for (int i = 0; i < featureMap.numRows(); i++) {
+            best.offer(i, featureMap.dot(i, theta));
+        }
+        return best.drainTo(top);
+    }
+
+    /**
+     * Samples a score for each arm on the log-odds scale.  Since the logistic function is monotonic,
+     * these scores give the same ordering as samplePi() without the cost of the link function.
+     *
+     * @param scores Where to put the scores.  Must have one element per arm.
+     */
+    public void sampleScores(double[] scores) {
+        featureMap.times(sampleTheta(), scores);
+    }
+
+    /**
+     * Samples the best arm for each of a batch of independent requests.
+     *
+     * @param choices Where to put the chosen arm for each request.
+     */
+    public void sampleBatch(int[] choices) {
+        int requests = choices.length;
+        Scratch s = scratch.get();
+        double[] theta = sampleThetaBatch(requests);
+        double[] max = s.batchScores(requests);
+        for (int b = 0; b < requests; b++) {
+            choices[b] = -1;
+        }
 
-            @Override
-            public double apply(Vector f) {
-                return inverseLink.apply(rand.nextDouble(f.get(0), f.get(1)));
+        double[] scores = s.blockScores();
+        for (int b0 = 0; b0 < requests; b0 += REQUEST_BLOCK) {
+            int b1 = Math.min(b0 + REQUEST_BLOCK, requests);
+            for (int i = 0; i < featureMap.numRows(); i++) {
+                scoreBlock(i, theta, requests, b0, b1, scores);
+                for (int b = b0; b < b1; b++) {
+                    double score = scores[b - b0];
+                    if (choices[b] < 0 || score > max[b]) {
+                        choices[b] = i;
+                        max[b] = score;
+                    }
+                }
             }
-        });
-        return featureMap.times(theta);
+        }
+    }
+
+    /**
+     * Samples rankings for each of a batch of independent requests.
+     *
+     * @param top One array per request.  Each will be filled with the best arms for that request,
+     *            best first, up to the length of the array.
+     */
+    public void rankBatch(int[][] top) {
+        int requests = top.length;
+        Scratch s = scratch.get();
+        double[] theta = sampleThetaBatch(requests);
+
+        double[] scores = s.blockScores();
+        for (int b0 = 0; b0 < requests; b0 += REQUEST_BLOCK) {
+            int b1 = Math.min(b0 + REQUEST_BLOCK, requests);
+            TopK[] best = new TopK[b1 - b0];
+            for (int b = b0; b < b1; b++) {
+                best[b - b0] = new TopK(Math.min(top[b].length, featureMap.numRows()));
+            }
+            for (int i = 0; i < featureMap.numRows(); i++) {
+                scoreBlock(i, theta, requests, b0, b1, scores);
+                for (int b = b0; b < b1; b++) {
+                    best[b - b0].offer(i, scores[b - b0]);
+                }
+            }
+            for (int b = b0; b < b1; b++) {
+                best[b - b0].drainTo(top[b]);
+            }
+        }
+    }
+
+    /**
+     * Returns the number of features.
+     */
+    public int numFeatures() {
+        return m;
+    }
+
+    /**
+     * Returns the current pseudo-count of successes for a feature.
+     */
+    public double getAlpha(int feature) {
+        return alpha[feature];
+    }
+
+    /**
+     * Returns the current pseudo-count of failures for a feature.
+     */
+    public double getBeta(int feature) {
+        return beta[feature];
     }
 
     public void train(int bandit, boolean success) {
-        state.viewColumn(success ? 0 : 1).assign(featureMap.viewRow(bandit), Functions.plusMult(1.0 / m));
+        double[] counts = success ? alpha : beta;
+        for (int k = featureMap.rowStart[bandit]; k < featureMap.rowStart[bandit + 1]; k++) {
+            counts[featureMap.columns[k]] += featureMap.values[k] / m;
+        }
+    }
+
+    /**
+     * Returns the pseudo-counts that sampling should use as an array holding the alpha and beta
+     * arrays.  The result must not be changed.
+     */
+    double[][] sampleCounts() {
+        return counts;
+    }
+
+    private boolean isParallel() {
+        return pool != null && featureMap.numRows() >= parallelThreshold;
+    }
+
+    /**
+     * Samples the weight for each feature into this thread's scratch array.  The inverse link is
+     * applied in a second pass over the array once all of the weights have been drawn.
+     */
+    private double[] sampleTheta() {
+        Scratch s = scratch.get();
+        double[] theta = s.theta(m);
+        double[][] counts = sampleCounts();
+        double[] a = counts[0];
+        double[] b = counts[1];
+        for (int j = 0; j < m; j++) {
+            theta[j] = s.rand.nextDouble(a[j], b[j]);
+        }
+        applyInverseLink(theta, m);
+        return theta;
+    }
+
+    /**
+     * Samples the weights for a batch of requests into this thread's scratch array.  The weight of
+     * feature j for request b is at j * requests + b so that the weights for all requests for a
+     * single feature are adjacent.
+     */
+    private double[] sampleThetaBatch(int requests) {
+        Scratch s = scratch.get();
+        double[] theta = s.theta(m * requests);
+        double[][] counts = sampleCounts();
+        int k = 0;
+        for (int j = 0; j < m; j++) {
+            double a = counts[0][j];
+            double b = counts[1][j];
+            for (int r = 0; r < requests; r++) {
+                theta[k++] = s.rand.nextDouble(a, b);
+            }
+        }
+        applyInverseLink(theta, k);
+        return theta;
+    }
+
+    /**
+     * Scores one arm against the requests b0 through b1-1 of a batch.
+     */
+    private void scoreBlock(int i, double[] theta, int requests, int b0, int b1, double[] scores) {
+        int width = b1 - b0;
+        for (int b = 0; b < width; b++) {
+            scores[b] = 0;
+        }
+        for (int k = featureMap.rowStart[i]; k < featureMap.rowStart[i + 1]; k++) {
+            double v = featureMap.values[k];
+            int offset = featureMap.columns[k] * requests + b0;
+            for (int b = 0; b < width; b++) {
+                scores[b] += v * theta[offset + b];
+            }
+        }
+    }
+
+    private void applyInverseLink(double[] p, int n) {
+        if (fastLink) {
+            FastLink.logit(p, n);
+        } else {
+            for (int i = 0; i < n; i++) {
+                p[i] = logit(p[i]);
+            }
+        }
+    }
+
+    private static double logistic(double x) {
+        return 1 / (1 + Math.exp(-x));
+    }
+
+    private static double logit(double p) {
+        return Math.log(p / (1 - p));
     }
 
     public class LogisticFunction implements DoubleFunction {
         @Override
         public double apply(double x) {
-            return 1 / (1 + Math.exp(-x));
+            return logistic(x);
         }
     }
 
     public class InverseLogisticFunction implements DoubleFunction {
         @Override
         public double apply(double p) {
-            return Math.log(p / (1 - p));
+            return logit(p);
+        }
+    }
+
+    /**
+     * Scores a range of arms, splitting the range in half until it is small enough to
+     * score directly.
+     */
+    @SuppressWarnings("serial")
+    private class ScoringTask extends RecursiveTask<TopK> {
+        private final double[] theta;
+        private final int start;
+        private final int end;
+        private final int k;
+
+        private ScoringTask(double[] theta, int start, int end, int k) {
+            this.theta = theta;
+            this.start = start;
+            this.end = end;
+            this.k = k;
+        }
+
+        @Override
+        protected TopK compute() {
+            if (end - start <= ARM_BLOCK) {
+                TopK r = new TopK(Math.min(k, end - start));
+                for (int i = start; i < end; i++) {
+                    r.offer(i, featureMap.dot(i, theta));
+                }
+                return r;
+            } else {
+                int mid = (start + end) >>> 1;
+                ScoringTask left = new ScoringTask(theta, start, mid, k);
+                ScoringTask right = new ScoringTask(theta, mid, end, k);
+                left.fork();
+                TopK r = right.compute();
+                TopK leftTop = left.join();
+                if (leftTop.capacity() > r.capacity()) {
+                    leftTop.merge(r);
+                    return leftTop;
+                }
+                r.merge(leftTop);
+                return r;
+            }
+        }
+    }
+
+    /**
+     * Working storage that is reused by each thread from one sample to the next.
+     */
+    private static class Scratch {
+        private final BetaDistribution rand;
+        private double[] theta = new double[0];
+        private TopK top = new TopK(0);
+        private double[] batchScores = new double[0];
+        private final double[] blockScores = new double[REQUEST_BLOCK];
+
+        Scratch(BetaDistribution rand) {
+            this.rand = rand;
+        }
+
+        double[] theta(int size) {
+            if (theta.length < size) {
+                theta = new double[size];
+            }
+            return theta;
+        }
+
+        TopK top(int k) {
+            if (top.capacity() != k) {
+                top = new TopK(k);
+            }
+            top.clear();
+            return top;
+        }
+
+        double[] batchScores(int requests) {
+            if (batchScores.length < requests) {
+                batchScores = new double[requests];
+            }
+            return batchScores;
+        }
+
+        double[] blockScores() {
+            return blockScores;
         }
     }
 }
@@ -18,55 +18,92 @@
 package com.mapr.stats.bandit;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
 import com.mapr.stats.random.AbstractBayesianDistribution;
-import org.apache.mahout.math.stats.OnlineSummarizer;
 
 import java.util.List;
 import java.util.Random;
+import java.util.Set;
 
 /**
  * Solves a bandit problem using an epsilon greedy algorithm.  In this algorithm, a fixed
  * proportion of trials are allocated to uniform exploration while all others are devoted
  * to the current best bandit alternative.
+ * <p/>
+ * Only a count and a sum are kept for each bandit so memory use doesn't grow with the number
+ * of trials.  The means are kept in an {@link IndexedMaxHeap} so training costs
+ * \(O(\log n)\) and exploitation finds the best bandit in constant time whether the mean of
+ * the current best goes up or down.  Ties go to the lowest index.
  */
 public class EpsilonGreedy extends BayesianBandit {
     private Random gen;
     private double epsilon;
-    private final List<OnlineSummarizer> summaries;
+    private final long[] counts;
+    private final double[] sums;
+    private final IndexedMaxHeap heap;
 
     public EpsilonGreedy(int bandits, double epsilon, Random gen) {
         this.gen = gen;
         this.epsilon = epsilon;
-        summaries = Lists.newArrayList();
+        counts = new long[bandits];
+        sums = new double[bandits];
+        heap = new IndexedMaxHeap(bandits);
         for (int i = 0; i < bandits; i++) {
-            final OnlineSummarizer s = new OnlineSummarizer();
-            summaries.add(s);
-            s.add(1);
+            // start each bandit with a single optimistic reward
+            counts[i] = 1;
+            sums[i] = 1;
+            heap.set(i, 1);
         }
     }
 
     /**
      * Samples probability estimates from each bandit and picks the apparent best
      *
-     * @return The index of the chosen bandit
+     * @return The index of the chosen bandit or -1 if there are no bandits.
      */
     @Override
     public int sample() {
-        if (gen.nextDouble() < epsilon) {
-            return gen.nextInt(summaries.size());
+        if (counts.length == 0) {
+            return -1;
+        } else if (gen.nextDouble() < epsilon) {
+            return gen.nextInt(counts.length);
         } else {
-            double max = summaries.get(0).getMean();
-            int i = 0;
-            int maxIndex = 0;
-            for (OnlineSummarizer summary : summaries) {
-                if (summary.getMean() > max) {
-                    max = summary.getMean();
-                    maxIndex = i;
-                }
-                i++;
+            return heap.top();
+        }
+    }
+
+    /**
+     * Orders the bandits by their current mean, but replaces each position with a uniformly
+     * selected bandit with probability epsilon.
+     *
+     * @param sampleSize The number of bandits to return.
+     * @return A list of distinct bandit indexes.
+     */
+    @Override
+    public List<Integer> rank(int sampleSize) {
+        int n = Math.min(sampleSize, counts.length);
+        int[] greedy = new int[n];
+        heap.top(greedy);
+
+        List<Integer> r = Lists.newArrayListWithCapacity(n);
+        Set<Integer> used = Sets.newHashSet();
+        int next = 0;
+        while (r.size() < n) {
+            int k;
+            if (gen.nextDouble() < epsilon) {
+                do {
+                    k = gen.nextInt(counts.length);
+                } while (used.contains(k));
+            } else {
+                // explored bandits may have used up some of the greedy choices
+                do {
+                    k = greedy[next++];
+                } while (used.contains(k));
             }
-            return maxIndex;
+            used.add(k);
+            r.add(k);
         }
+        return r;
     }
 
     /**
@@ -77,7 +114,34 @@ public class EpsilonGreedy extends BayesianBandit {
      */
     @Override
     public void train(int bandit, double reward) {
-        summaries.get(bandit).add(reward);
+        counts[bandit]++;
+        sums[bandit] += reward;
+        heap.update(bandit, getMean(bandit));
+    }
+
+    /**
+     * Scores each bandit by its current mean except that, with probability epsilon, a uniformly
+     * chosen bandit gets an infinite score.  The bandit with the largest score is thus
+     * distributed just like the result of {@link #sample()}.
+     */
+    @Override
+    public void sampleAll(double[] scores) {
+        for (int i = 0; i < counts.length; i++) {
+            scores[i] = heap.key(i);
+        }
+        if (counts.length > 0 && gen.nextDouble() < epsilon) {
+            scores[gen.nextInt(counts.length)] = Double.POSITIVE_INFINITY;
+        }
+    }
+
+    @Override
+    public int size() {
+        return counts.length;
+    }
+
+    @Override
+    public double getMean(int k) {
+        return sums[k] / counts[k];
     }
 
     @Override
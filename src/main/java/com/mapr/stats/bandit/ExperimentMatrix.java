@@ -0,0 +1,558 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mapr.stats.bandit;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Splitter;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.io.Files;
+import com.mapr.stats.random.BetaQuantileCache;
+import com.mapr.stats.random.BinomialDistributionSampler;
+import com.mapr.stats.random.DistributionGenerator;
+import com.mapr.stats.random.NormalDistributionSampler;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Reader;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Runs the regret experiments described by a plain text configuration.
+ * <p/>
+ * The configuration is a list of matrices.  Each matrix starts with a line containing
+ * <code>matrix</code> and a name and is followed by lines that give the solvers, reward
+ * distributions, numbers of arms and numbers of steps to try.  Every combination of these
+ * becomes a job that runs {@link BanditTrainer#totalRegret}.  For example,
+ * <pre>
+ * # anything after a hash is a comment
+ * seed 42
+ *
+ * matrix binomial
+ * replications 1000
+ * factory beta
+ * factory epsilon 0.05
+ * sampler binomial 1 1
+ * arms 2 20 100
+ * steps 1000
+ * </pre>
+ * gives six jobs.  Lines before the first matrix set defaults for <code>seed</code>,
+ * <code>replications</code>, <code>precision</code>, <code>format</code> and <code>buckets</code>.  If a precision is
+ * given, replications are run in batches until the 95% confidence interval for the mean final
+ * regret has a half-width no larger than the precision, with <code>replications</code> as the
+ * limit.  See {@link BanditTrainer#adaptiveRegret}.  The format can be <code>tsv</code>,
+ * <code>csv</code> or <code>bin</code> for the binary columnar form written by
+ * {@link com.mapr.stats.io.ColumnarSink}.  The buckets can be <code>linear</code> to record the
+ * per-step regret for every step or <code>log</code> to average it over log-spaced ranges of steps,
+ * which keeps the output and the memory used by each replication small for very long runs.
+ * Factories can be <code>beta</code>, <code>beta-table</code> to sample small posteriors
+ * from the shared {@link BetaQuantileCache}, <code>compact</code>,
+ * <code>gamma-normal</code>, <code>float-beta</code>, <code>float-gamma-normal</code>,
+ * <code>epsilon</code> with a value for epsilon, <code>ucb1</code>,
+ * <code>kl-ucb</code> or <code>bayes-ucb</code>.  Samplers can be <code>normal</code> with a standard
+ * deviation, <code>binomial</code> with the alpha and beta of the distribution of the
+ * probabilities or <code>drift</code> with alpha, beta and a step size for Bernoulli arms whose
+ * probabilities wander over time as in {@link BanditTrainer#driftingRegret}.
+ * <p/>
+ * Results for a job go to <code>regret-</code><i>id</i> and <code>local-</code><i>id</i> where
+ * the id is made from the matrix name and the settings of the job.  A matrix that has only one
+ * job can instead name its output files with a line such as <code>output regret-20 local-20</code>.
+ * The extension for the format is added to these names.
+ * <p/>
+ * Jobs are started longest first so that a long job doesn't hold up the end of the run.  A job
+ * whose output files already exist is skipped so an interrupted run can be resumed.  A job that
+ * fails leaves no output behind.  Each job gets a seed derived from the matrix seed and its name
+ * so that results don't depend on which jobs run together.  When all jobs are done, a manifest
+ * listing each job, how it was run, its median and mean final regret, the half-width of the
+ * confidence interval and how many replications were actually used is written next to the
+ * results.  Rows from an earlier manifest are kept for jobs that were skipped and for jobs that
+ * aren't part of this run.
+ */
+public class ExperimentMatrix {
+    public static final String MANIFEST = "manifest.tsv";
+    private static final String MANIFEST_HEADER =
+            "id\tfactory\tsampler\tarms\tsteps\treplications\tseed\tstatus\tseconds\tmedian\tmean\thalf-width\tused";
+
+    // replications per batch when a precision target is given
+    private static final int BATCH = 50;
+
+    private static final Splitter WORDS = Splitter.on(' ').trimResults().omitEmptyStrings();
+
+    private ExperimentMatrix() {
+    }
+
+    /**
+     * Reads a configuration and expands it into jobs in the order they are described.
+     *
+     * @throws IllegalArgumentException If the configuration can't be understood.
+     */
+    public static List<Job> parse(Reader config) throws IOException {
+        List<Job> jobs = Lists.newArrayList();
+        BufferedReader in = new BufferedReader(config);
+
+        long seed = 0;
+        int replications = 1000;
+        String format = "tsv";
+        double precision = 0;
+        boolean logBuckets = false;
+        Matrix current = null;
+
+        int lineNumber = 0;
+        String line = in.readLine();
+        while (line != null) {
+            lineNumber++;
+            int comment = line.indexOf('#');
+            if (comment >= 0) {
+                line = line.substring(0, comment);
+            }
+            List<String> words = Lists.newArrayList(WORDS.split(line.replace('\t', ' ')));
+            if (words.size() > 0) {
+                String key = words.get(0);
+                List<String> values = words.subList(1, words.size());
+                try {
+                    if (values.isEmpty()) {
+                        throw new IllegalArgumentException("Missing value");
+                    }
+                    if (key.equals("matrix")) {
+                        if (current != null) {
+                            current.expand(jobs);
+                        }
+                        current = new Matrix(values.get(0), seed, replications, format, precision, logBuckets);
+                    } else if (key.equals("seed")) {
+                        if (current == null) {
+                            seed = Long.parseLong(values.get(0));
+                        } else {
+                            current.seed = Long.parseLong(values.get(0));
+                        }
+                    } else if (key.equals("replications")) {
+                        if (current == null) {
+                            replications = Integer.parseInt(values.get(0));
+                        } else {
+                            current.replications = Integer.parseInt(values.get(0));
+                        }
+                    } else if (key.equals("precision")) {
+                        double value = Double.parseDouble(values.get(0));
+                        if (value < 0) {
+                            throw new IllegalArgumentException("Precision can't be negative");
+                        }
+                        if (current == null) {
+                            precision = value;
+                        } else {
+                            current.precision = value;
+                        }
+                    } else if (key.equals("format")) {
+                        String value = values.get(0);
+                        if (!value.equals("tsv") && !value.equals("csv") && !value.equals("bin")) {
+                            throw new IllegalArgumentException("Format must be tsv, csv or bin");
+                        }
+                        if (current == null) {
+                            format = value;
+                        } else {
+                            current.format = value;
+                        }
+                    } else if (key.equals("buckets")) {
+                        String value = values.get(0);
+                        if (!value.equals("linear") && !value.equals("log")) {
+                            throw new IllegalArgumentException("Buckets must be linear or log");
+                        }
+                        if (current == null) {
+                            logBuckets = value.equals("log");
+                        } else {
+                            current.logBuckets = value.equals("log");
+                        }
+                    } else if (current == null) {
+                        throw new IllegalArgumentException("Expected matrix before " + key);
+                    } else if (key.equals("factory")) {
+                        String spec = join(values);
+                        factory(spec);
+                        current.factories.add(spec);
+                    } else if (key.equals("sampler")) {
+                        String spec = join(values);
+                        if (isDrift(spec)) {
+                            drift(spec);
+                        } else {
+                            sampler(spec, new Random());
+                        }
+                        current.samplers.add(spec);
+                    } else if (key.equals("arms")) {
+                        for (String value : values) {
+                            current.arms.add(Integer.parseInt(value));
+                        }
+                    } else if (key.equals("steps")) {
+                        for (String value : values) {
+                            current.steps.add(Integer.parseInt(value));
+                        }
+                    } else if (key.equals("output")) {
+                        if (values.size() != 2) {
+                            throw new IllegalArgumentException("Output needs names for cumulative and local regret");
+                        }
+                        current.output = new String[]{values.get(0), values.get(1)};
+                    } else {
+                        throw new IllegalArgumentException("Unknown setting " + key);
+                    }
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException(String.format("Bad number on line %d: %s", lineNumber, line), e);
+                } catch (IllegalArgumentException e) {
+                    throw new IllegalArgumentException(String.format("%s on line %d: %s", e.getMessage(), lineNumber, line), e);
+                }
+            }
+            line = in.readLine();
+        }
+        if (current != null) {
+            current.expand(jobs);
+        }
+        return jobs;
+    }
+
+    /**
+     * Runs all jobs that don't already have results.
+     *
+     * @param jobs      The jobs to run.
+     * @param outputDir Where to put results and the manifest.
+     * @param threads   How many jobs to run at once.  Replications within each job share a pool of
+     *                  the same number of threads.
+     * @return How many jobs were run.  Jobs that were skipped or that failed are not counted.
+     */
+    public static int run(List<Job> jobs, File outputDir, int threads) throws InterruptedException, IOException {
+        if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+            throw new FileNotFoundException("Can't create output directory " + outputDir);
+        }
+
+        List<Job> longestFirst = Lists.newArrayList(jobs);
+        Collections.sort(longestFirst, new Comparator<Job>() {
+            @Override
+            public int compare(Job a, Job b) {
+                return Double.compare(b.cost(), a.cost());
+            }
+        });
+
+        final ForkJoinPool replicationPool = new ForkJoinPool(threads);
+        ExecutorService ex = Executors.newFixedThreadPool(threads);
+        try {
+            List<Callable<Object>> tasks = Lists.newArrayList();
+            for (final Job job : longestFirst) {
+                final File cumulative = new File(outputDir, job.cumulativeOutput());
+                final File local = new File(outputDir, job.localOutput());
+                if (cumulative.exists() && local.exists()) {
+                    job.status = "skipped";
+                    continue;
+                }
+                tasks.add(new Callable<Object>() {
+                    @Override
+                    public Object call() {
+                        try {
+                            job.runIn(cumulative, local, replicationPool);
+                            System.out.printf("%s\t%.1f\n", job.getId(), job.seconds);
+                        } catch (Exception e) {
+                            job.status = "failed";
+                            System.out.printf("%s\tfailed\n", job.getId());
+                            e.printStackTrace();
+                        }
+                        return null;
+                    }
+                });
+            }
+            ex.invokeAll(tasks);
+        } finally {
+            ex.shutdown();
+            replicationPool.shutdown();
+        }
+
+        File manifest = new File(outputDir, MANIFEST);
+        Map<String, String> previous = readManifest(manifest);
+        int done = 0;
+        try (PrintWriter out = new PrintWriter(manifest)) {
+            out.printf("%s\n", MANIFEST_HEADER);
+            for (Job job : jobs) {
+                String old = previous.remove(job.getId());
+                if (job.status.equals("skipped") && old != null) {
+                    // the results came from an earlier run so its row is still right
+                    out.printf("%s\n", old);
+                    continue;
+                }
+                RegretEstimate e = job.estimate;
+                out.printf("%s\t%s\t%s\t%d\t%d\t%d\t%d\t%s\t%.1f\t%.4f\t%.4f\t%.4f\t%d\n",
+                        job.getId(), job.factory, job.sampler, job.arms, job.steps, job.replications, job.seed,
+                        job.status, job.seconds,
+                        e == null ? Double.NaN : e.getMedian(), e == null ? Double.NaN : e.getMean(),
+                        e == null ? Double.NaN : e.getHalfWidth(), e == null ? 0 : e.getReplications());
+                if (job.status.equals("done")) {
+                    done++;
+                }
+            }
+            for (String row : previous.values()) {
+                out.printf("%s\n", row);
+            }
+        }
+        return done;
+    }
+
+    /**
+     * Reads the rows of an existing manifest keyed by job id.
+     *
+     * @return The rows in their original order or an empty map if there is no manifest.
+     */
+    private static Map<String, String> readManifest(File manifest) throws IOException {
+        Map<String, String> r = Maps.newLinkedHashMap();
+        if (manifest.exists()) {
+            List<String> lines = Files.readLines(manifest, Charsets.UTF_8);
+            for (String line : lines.subList(Math.min(1, lines.size()), lines.size())) {
+                int tab = line.indexOf('\t');
+                if (tab > 0) {
+                    r.put(line.substring(0, tab), line);
+                }
+            }
+        }
+        return r;
+    }
+
+    /**
+     * Creates a factory from a description such as <code>beta</code> or <code>epsilon 0.05</code>.
+     * The names are the same as in a configuration file.
+     *
+     * @throws IllegalArgumentException If the description isn't understood.
+     */
+    public static BanditFactory factory(String spec) {
+        List<String> words = Lists.newArrayList(WORDS.split(spec));
+        String name = words.get(0);
+        if (name.equals("beta")) {
+            return new BetaBayesFactory();
+        } else if (name.equals("beta-table")) {
+            return new BetaBayesFactory(BetaQuantileCache.getShared());
+        } else if (name.equals("compact")) {
+            return new CompactBetaBayesFactory();
+        } else if (name.equals("gamma-normal")) {
+            return new GammaNormalBayesFactory();
+        } else if (name.equals("float-beta")) {
+            return new FloatBetaBayesFactory();
+        } else if (name.equals("float-gamma-normal")) {
+            return new FloatGammaNormalBayesFactory();
+        } else if (name.equals("epsilon")) {
+            if (words.size() != 2) {
+                throw new IllegalArgumentException("Epsilon greedy needs a value for epsilon");
+            }
+            return new EpsilonGreedyFactory(Double.parseDouble(words.get(1)));
+        } else if (name.equals("ucb1")) {
+            return new Ucb1Factory();
+        } else if (name.equals("kl-ucb")) {
+            return new KlUcbFactory();
+        } else if (name.equals("bayes-ucb")) {
+            return new BayesUcbFactory();
+        } else {
+            throw new IllegalArgumentException("Unknown factory " + name);
+        }
+    }
+
+    static DistributionGenerator sampler(String spec, Random gen) {
+        List<String> words = Lists.newArrayList(WORDS.split(spec));
+        String name = words.get(0);
+        if (name.equals("normal")) {
+            if (words.size() != 2) {
+                throw new IllegalArgumentException("Normal sampler needs a standard deviation");
+            }
+            return new NormalDistributionSampler(Double.parseDouble(words.get(1)), gen);
+        } else if (name.equals("binomial")) {
+            if (words.size() != 3) {
+                throw new IllegalArgumentException("Binomial sampler needs alpha and beta");
+            }
+            return new BinomialDistributionSampler(Double.parseDouble(words.get(1)), Double.parseDouble(words.get(2)), gen);
+        } else {
+            throw new IllegalArgumentException("Unknown sampler " + name);
+        }
+    }
+
+    static boolean isDrift(String spec) {
+        return WORDS.split(spec).iterator().next().equals("drift");
+    }
+
+    /**
+     * Parses the alpha, beta and step size of a drifting sampler.
+     */
+    static double[] drift(String spec) {
+        List<String> words = Lists.newArrayList(WORDS.split(spec));
+        if (words.size() != 4) {
+            throw new IllegalArgumentException("Drift sampler needs alpha, beta and a step size");
+        }
+        return new double[]{Double.parseDouble(words.get(1)), Double.parseDouble(words.get(2)), Double.parseDouble(words.get(3))};
+    }
+
+    private static String join(List<String> words) {
+        StringBuilder r = new StringBuilder();
+        for (String word : words) {
+            if (r.length() > 0) {
+                r.append(' ');
+            }
+            r.append(word);
+        }
+        return r.toString();
+    }
+
+    /**
+     * The settings for a single matrix while it is being read.
+     */
+    private static class Matrix {
+        private final String name;
+        private long seed;
+        private int replications;
+        private String format;
+        private double precision;
+        private boolean logBuckets;
+        private final List<String> factories = Lists.newArrayList();
+        private final List<String> samplers = Lists.newArrayList();
+        private final List<Integer> arms = Lists.newArrayList();
+        private final List<Integer> steps = Lists.newArrayList();
+        private String[] output;
+
+        private Matrix(String name, long seed, int replications, String format, double precision, boolean logBuckets) {
+            this.name = name;
+            this.seed = seed;
+            this.replications = replications;
+            this.format = format;
+            this.precision = precision;
+            this.logBuckets = logBuckets;
+        }
+
+        private void expand(List<Job> jobs) {
+            if (factories.isEmpty() || samplers.isEmpty() || arms.isEmpty() || steps.isEmpty()) {
+                throw new IllegalArgumentException("Matrix " + name + " needs at least one each of factory, sampler, arms and steps");
+            }
+            if (output != null && factories.size() * samplers.size() * arms.size() * steps.size() > 1) {
+                throw new IllegalArgumentException("Matrix " + name + " has more than one job so it can't name its output");
+            }
+            for (String factory : factories) {
+                for (String sampler : samplers) {
+                    for (int n : arms) {
+                        for (int m : steps) {
+                            jobs.add(new Job(name, factory, sampler, n, m, replications, seed, format, precision, logBuckets,
+                                    output));
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * A single run of {@link BanditTrainer#totalRegret} along with its outcome.
+     */
+    public static class Job {
+        private final String id;
+        private final String factory;
+        private final String sampler;
+        private final int arms;
+        private final int steps;
+        private final int replications;
+        private final long seed;
+        private final String format;
+        private final double precision;
+        private final boolean logBuckets;
+        private final String cumulativeName;
+        private final String localName;
+
+        private volatile String status = "pending";
+        private volatile double seconds = Double.NaN;
+        private volatile RegretEstimate estimate;
+
+        private Job(String matrix, String factory, String sampler, int arms, int steps, int replications, long matrixSeed,
+                    String format, double precision, boolean logBuckets, String[] output) {
+            this.id = String.format("%s-%s-%s-%dx%d", matrix, factory, sampler, arms, steps).replace(' ', '_');
+            this.factory = factory;
+            this.sampler = sampler;
+            this.arms = arms;
+            this.steps = steps;
+            this.replications = replications;
+            this.seed = matrixSeed * 31 + id.hashCode();
+            this.format = format;
+            this.precision = precision;
+            this.logBuckets = logBuckets;
+            this.cumulativeName = output == null ? "regret-" + id : output[0];
+            this.localName = output == null ? "local-" + id : output[1];
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getStatus() {
+            return status;
+        }
+
+        /**
+         * Returns the estimated final regret and its precision, or null if the job hasn't run.
+         */
+        public RegretEstimate getEstimate() {
+            return estimate;
+        }
+
+        public String cumulativeOutput() {
+            return cumulativeName + "." + format;
+        }
+
+        public String localOutput() {
+            return localName + "." + format;
+        }
+
+        /**
+         * Returns the relative amount of work for this job.  Most solvers take time proportional to
+         * the number of arms for each step.
+         */
+        public double cost() {
+            return (double) replications * steps * arms;
+        }
+
+        private void runIn(File cumulative, File local, ForkJoinPool pool) throws IOException {
+            // write to temporary files so that a partial result is never mistaken for a finished one
+            File cumulativeTmp = new File(cumulative.getParentFile(), "tmp-" + cumulative.getName());
+            File localTmp = new File(local.getParentFile(), "tmp-" + local.getName());
+            long t0 = System.nanoTime();
+            try {
+                BanditTrainer.Scenario scenario;
+                if (isDrift(sampler)) {
+                    double[] drift = drift(sampler);
+                    scenario = BanditTrainer.drifting(arms, steps, factory(factory), drift[0], drift[1], drift[2]);
+                } else {
+                    scenario = BanditTrainer.stationary(arms, steps, factory(factory), sampler(sampler, new Random(seed)));
+                }
+                // without a precision target, all replications go in one batch just as in a fixed size run
+                int batch = precision > 0 ? Math.min(replications, BATCH) : replications;
+                estimate = BanditTrainer.adaptiveRegret(cumulativeTmp.getPath(), localTmp.getPath(), steps, scenario,
+                        logBuckets, precision, batch, replications, seed, pool);
+                seconds = (System.nanoTime() - t0) * 1e-9;
+                if (!localTmp.renameTo(local) || !cumulativeTmp.renameTo(cumulative)) {
+                    throw new IOException("Can't rename results for " + id);
+                }
+                status = "done";
+            } finally {
+                // after a successful rename there is nothing left to delete
+                cumulativeTmp.delete();
+                localTmp.delete();
+            }
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mapr.stats.bandit;
+
+/**
+ * Table driven approximations of the logistic function and its inverse.
+ * <p/>
+ * The logistic function is interpolated linearly in a table covering \([-16, 16]\) with
+ * a spacing of 1/128.  The absolute error is less than \(10^{-6}\) and the approximation is
+ * monotonic, so it never changes the order of two scores.  Outside the table, the exact
+ * function is used.
+ * <p/>
+ * The logit is computed as \(\log p - \log (1-p)\) where each logarithm is computed
+ * from the binary exponent plus a linearly interpolated table of \(\log m\) for the mantissa
+ * \(m \in [1, 2)\).  The absolute error in the logit is less than \(10^{-6}\).
+ */
+public final class FastLink {
+    private static final double LOGISTIC_LIMIT = 16;
+    private static final int LOGISTIC_STEPS_PER_UNIT = 128;
+    private static final double[] LOGISTIC = new double[(int) (2 * LOGISTIC_LIMIT * LOGISTIC_STEPS_PER_UNIT) + 2];
+
+    private static final int LOG_BITS = 10;
+    private static final int LOG_SHIFT = 52 - LOG_BITS;
+    private static final double LOG_FRACTION_SCALE = 1.0 / (1L << LOG_SHIFT);
+    private static final double[] LOG = new double[(1 << LOG_BITS) + 1];
+    private static final double LN2 = Math.log(2);
+
+    static {
+        for (int i = 0; i < LOGISTIC.length; i++) {
+            double x = -LOGISTIC_LIMIT + (double) i / LOGISTIC_STEPS_PER_UNIT;
+            LOGISTIC[i] = 1 / (1 + Math.exp(-x));
+        }
+        for (int i = 0; i < LOG.length; i++) {
+            LOG[i] = Math.log(1 + (double) i / (1 << LOG_BITS));
+        }
+    }
+
+    private FastLink() {
+    }
+
+    public static double logistic(double x) {
+        if (x > -LOGISTIC_LIMIT && x < LOGISTIC_LIMIT) {
+            double u = (x + LOGISTIC_LIMIT) * LOGISTIC_STEPS_PER_UNIT;
+            int i = (int) u;
+            return LOGISTIC[i] + (u - i) * (LOGISTIC[i + 1] - LOGISTIC[i]);
+        }
+        return 1 / (1 + Math.exp(-x));
+    }
+
+    public static double logit(double p) {
+        return log(p) - log(1 - p);
+    }
+
+    /**
+     * Applies the logistic function to the first n elements of an array in place.
+     */
+    public static void logistic(double[] x, int n) {
+        for (int i = 0; i < n; i++) {
+            x[i] = logistic(x[i]);
+        }
+    }
+
+    /**
+     * Applies the logit function to the first n elements of an array in place.
+     */
+    public static void logit(double[] p, int n) {
+        for (int i = 0; i < n; i++) {
+            p[i] = logit(p[i]);
+        }
+    }
+
+    static double log(double x) {
+        long bits = Double.doubleToRawLongBits(x);
+        int exponent = (int) ((bits >>> 52) & 0x7ff);
+        if (exponent == 0 || exponent == 0x7ff || bits < 0) {
+            // zero, denormal, infinite, NaN or negative
+            return Math.log(x);
+        }
+        long mantissa = bits & 0xfffffffffffffL;
+        int i = (int) (mantissa >>> LOG_SHIFT);
+        double f = (mantissa & ((1L << LOG_SHIFT) - 1)) * LOG_FRACTION_SCALE;
+        return (exponent - 1023) * LN2 + LOG[i] + f * (LOG[i + 1] - LOG[i]);
+    }
+}
@@ -0,0 +1,230 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mapr.stats.bandit;
+
+import com.google.common.collect.AbstractIterator;
+import com.mapr.stats.random.AbstractBayesianDistribution;
+import com.mapr.stats.random.BetaBinomialDistribution;
+import com.mapr.stats.random.BetaQuantileCache;
+import com.mapr.stats.random.FloatSampler;
+import org.apache.mahout.math.jet.random.AbstractContinousDistribution;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A beta-binomial bandit that keeps the posterior parameters for all arms in two float arrays
+ * and samples in single precision with a {@link FloatSampler}.
+ * <p/>
+ * Each arm costs 8 bytes so scanning a very large catalog moves a fraction of the memory that a
+ * distribution object per arm would.  The sampling loops are ordinary scalar code, so the
+ * savings come from memory traffic and cheaper deviates, not from vector instructions.  Unlike {@link CompactBetaBayesModel}, the prior can be any
+ * positive value.  Floats only count exactly up to \(2^{24}\), and past that point one of the
+ * two parameters would stop growing while the other kept on, which would bias the mean.  To
+ * avoid this, both parameters of an arm are halved as soon as either reaches \(2^{23}\).  That
+ * keeps the posterior mean and forgets half of the evidence, which for an arm with millions of
+ * trials leaves a posterior that is still very narrow.
+ * <p/>
+ * As with the other beta models, arms with small integer parameters are sampled from the
+ * quantile tables in {@link BetaQuantileCache}, using the single precision copies that the cache
+ * shares between all models.
+ */
+public class FloatBetaBayesModel extends BayesianBandit {
+    // parameters are halved when either reaches this so that increments stay exact
+    static final float MAX_COUNT = 1 << 23;
+
+    private final float[] alpha;
+    private final float[] beta;
+    private final Random gen;
+    private final FloatSampler sampler;
+
+    private final BetaQuantileCache quantiles;
+
+    public FloatBetaBayesModel(int bandits, Random gen) {
+        this(bandits, 1, 1, gen);
+    }
+
+    public FloatBetaBayesModel(int bandits, double alpha0, double beta0, Random gen) {
+        this.alpha = new float[bandits];
+        this.beta = new float[bandits];
+        this.gen = gen;
+        this.sampler = new FloatSampler(gen);
+        Arrays.fill(alpha, (float) alpha0);
+        Arrays.fill(beta, (float) beta0);
+        this.quantiles = BetaQuantileCache.getShared();
+    }
+
+    @Override
+    public int sample() {
+        float max = Float.NEGATIVE_INFINITY;
+        int r = -1;
+        for (int i = 0; i < alpha.length; i++) {
+            float p = nextMean(i);
+            if (p > max) {
+                r = i;
+                max = p;
+            }
+        }
+        return r;
+    }
+
+    @Override
+    public List<Integer> rank(int sampleSize) {
+        TopK top = new TopK(Math.min(sampleSize, alpha.length));
+        for (int i = 0; i < alpha.length; i++) {
+            top.offer(i, nextMean(i));
+        }
+        return top.toList();
+    }
+
+    @Override
+    public void sampleAll(double[] scores) {
+        for (int i = 0; i < alpha.length; i++) {
+            scores[i] = nextMean(i);
+        }
+    }
+
+    @Override
+    public int size() {
+        return alpha.length;
+    }
+
+    @Override
+    public void train(int bandit, double reward) {
+        if (reward == 0.0) {
+            beta[bandit]++;
+        } else if (reward == 1) {
+            alpha[bandit]++;
+        } else {
+            throw new IllegalArgumentException("Samples for beta-binomial distribution must be 0 or 1");
+        }
+        if (alpha[bandit] >= MAX_COUNT || beta[bandit] >= MAX_COUNT) {
+            alpha[bandit] /= 2;
+            beta[bandit] /= 2;
+        }
+    }
+
+    @Override
+    public boolean addModelDistribution(AbstractBayesianDistribution distribution) {
+        throw new UnsupportedOperationException("Can't add a distribution to a float model");
+    }
+
+    @Override
+    public double getMean(int k) {
+        return alpha[k] / (alpha[k] + beta[k]);
+    }
+
+    /**
+     * Returns views of each arm.  The views share state with this model.
+     */
+    @Override
+    public Iterator<AbstractBayesianDistribution> iterator() {
+        return new AbstractIterator<AbstractBayesianDistribution>() {
+            int i = 0;
+
+            @Override
+            protected AbstractBayesianDistribution computeNext() {
+                if (i < alpha.length) {
+                    return new Arm(i++);
+                } else {
+                    return endOfData();
+                }
+            }
+        };
+    }
+
+    private float nextMean(int i) {
+        float a = alpha[i];
+        float b = beta[i];
+        float[] table = table(a, b);
+        if (table != null) {
+            return sampler.nextTabulated(table);
+        }
+        return sampler.nextBeta(a, b);
+    }
+
+    /**
+     * Returns the quantile table for an arm with the given parameters, or null if these
+     * parameters aren't tabulated.
+     */
+    private float[] table(float a, float b) {
+        if (!quantiles.isTabulated(a, b)) {
+            return null;
+        }
+        return quantiles.floatTable((int) a, (int) b);
+    }
+
+    /**
+     * A view of a single arm.
+     */
+    private class Arm extends AbstractBayesianDistribution {
+        private final int i;
+
+        private Arm(int i) {
+            this.i = i;
+        }
+
+        @Override
+        public double nextDouble() {
+            return gen.nextDouble() < getMean() ? 1 : 0;
+        }
+
+        @Override
+        public void add(double x) {
+            train(i, x);
+        }
+
+        @Override
+        public double nextMean() {
+            return FloatBetaBayesModel.this.nextMean(i);
+        }
+
+        @Override
+        public void nextMeans(double[] out, int offset, int count) {
+            float a = alpha[i];
+            float b = beta[i];
+            float[] table = table(a, b);
+            if (table != null) {
+                for (int j = 0; j < count; j++) {
+                    out[offset + j] = sampler.nextTabulated(table);
+                }
+            } else {
+                for (int j = 0; j < count; j++) {
+                    out[offset + j] = sampler.nextBeta(a, b);
+                }
+            }
+        }
+
+        @Override
+        public AbstractContinousDistribution posteriorDistribution() {
+            return new BetaBinomialDistribution(alpha[i], beta[i], gen).posteriorDistribution();
+        }
+
+        @Override
+        public double getMean() {
+            return FloatBetaBayesModel.this.getMean(i);
+        }
+
+        @Override
+        public double getSamples() {
+            return alpha[i] + beta[i];
+        }
+    }
+}
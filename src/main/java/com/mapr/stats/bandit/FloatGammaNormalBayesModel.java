@@ -0,0 +1,201 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mapr.stats.bandit;
+
+import com.google.common.collect.AbstractIterator;
+import com.mapr.stats.random.AbstractBayesianDistribution;
+import com.mapr.stats.random.FloatSampler;
+import com.mapr.stats.random.GammaNormalDistribution;
+import org.apache.mahout.math.jet.random.AbstractContinousDistribution;
+import org.apache.mahout.math.jet.random.Normal;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * A bandit for normally distributed rewards that keeps the sufficient statistics for all arms in
+ * float arrays and samples in single precision with a {@link FloatSampler}.
+ * <p/>
+ * The model is the same as for {@link GammaNormalDistribution}.  The mean, count and total
+ * squared deviation for each arm take 12 bytes and the posterior of the mean is sampled
+ * directly as a scaled t deviate.
+ * <p/>
+ * A float count stops growing at \(2^{24}\) while the squared deviations would keep adding
+ * up, and well before that the update of the mean by \(\delta / n\) runs out of bits.  So
+ * once the count for an arm reaches \(2^{20}\), the count and the squared deviations are both
+ * halved.  This keeps the mean and the variance estimate and forgets half of the evidence.
+ */
+public class FloatGammaNormalBayesModel extends BayesianBandit {
+    // counts and squared deviations are halved when the count reaches this
+    static final float MAX_COUNT = 1 << 20;
+
+    private final float[] m;
+    private final float[] n;
+    private final float[] ss;
+    private final Random gen;
+    private final FloatSampler sampler;
+
+    public FloatGammaNormalBayesModel(int bandits, Random gen) {
+        this.m = new float[bandits];
+        this.n = new float[bandits];
+        this.ss = new float[bandits];
+        this.gen = gen;
+        this.sampler = new FloatSampler(gen);
+        // same prior as GammaNormalBayesModel
+        Arrays.fill(n, 1);
+        Arrays.fill(ss, 1);
+    }
+
+    @Override
+    public int sample() {
+        float max = Float.NEGATIVE_INFINITY;
+        int r = -1;
+        for (int i = 0; i < m.length; i++) {
+            float x = nextMean(i);
+            if (x > max) {
+                r = i;
+                max = x;
+            }
+        }
+        return r;
+    }
+
+    @Override
+    public List<Integer> rank(int sampleSize) {
+        TopK top = new TopK(Math.min(sampleSize, m.length));
+        for (int i = 0; i < m.length; i++) {
+            top.offer(i, nextMean(i));
+        }
+        return top.toList();
+    }
+
+    @Override
+    public void sampleAll(double[] scores) {
+        for (int i = 0; i < m.length; i++) {
+            scores[i] = nextMean(i);
+        }
+    }
+
+    @Override
+    public int size() {
+        return m.length;
+    }
+
+    @Override
+    public void train(int bandit, double reward) {
+        float count = n[bandit] + 1;
+        float delta = (float) reward - m[bandit];
+        float mean = m[bandit] + delta / count;
+        ss[bandit] += delta * ((float) reward - mean);
+        m[bandit] = mean;
+        n[bandit] = count;
+        if (count >= MAX_COUNT) {
+            n[bandit] /= 2;
+            ss[bandit] /= 2;
+        }
+    }
+
+    @Override
+    public boolean addModelDistribution(AbstractBayesianDistribution distribution) {
+        throw new UnsupportedOperationException("Can't add a distribution to a float model");
+    }
+
+    @Override
+    public double getMean(int k) {
+        return m[k];
+    }
+
+    /**
+     * Returns views of each arm.  The views share state with this model.
+     */
+    @Override
+    public Iterator<AbstractBayesianDistribution> iterator() {
+        return new AbstractIterator<AbstractBayesianDistribution>() {
+            int i = 0;
+
+            @Override
+            protected AbstractBayesianDistribution computeNext() {
+                if (i < m.length) {
+                    return new Arm(i++);
+                } else {
+                    return endOfData();
+                }
+            }
+        };
+    }
+
+    private float nextMean(int i) {
+        float count = n[i];
+        return m[i] + (float) Math.sqrt(ss[i]) / count * sampler.nextT(count);
+    }
+
+    /**
+     * A view of a single arm.
+     */
+    private class Arm extends AbstractBayesianDistribution {
+        private final int i;
+
+        private Arm(int i) {
+            this.i = i;
+        }
+
+        @Override
+        public double nextDouble() {
+            float variance = ss[i] / 2 / sampler.nextGamma(n[i] / 2);
+            float mean = m[i] + sampler.nextGaussian() * (float) Math.sqrt(variance / n[i]);
+            return mean + sampler.nextGaussian() * (float) Math.sqrt(variance);
+        }
+
+        @Override
+        public void add(double x) {
+            train(i, x);
+        }
+
+        @Override
+        public double nextMean() {
+            return FloatGammaNormalBayesModel.this.nextMean(i);
+        }
+
+        @Override
+        public void nextMeans(double[] out, int offset, int count) {
+            float mean = m[i];
+            float df = n[i];
+            float scale = (float) Math.sqrt(ss[i]) / df;
+            for (int j = 0; j < count; j++) {
+                out[offset + j] = mean + scale * sampler.nextT(df);
+            }
+        }
+
+        @Override
+        public AbstractContinousDistribution posteriorDistribution() {
+            return new Normal(m[i], Math.sqrt(ss[i] / n[i]), gen);
+        }
+
+        @Override
+        public double getMean() {
+            return m[i];
+        }
+
+        @Override
+        public double getSamples() {
+            return n[i];
+        }
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mapr.stats.bandit;
+
+import com.google.common.base.Charsets;
+import com.mapr.stats.random.BetaDistribution;
+import org.apache.mahout.math.MurmurHash;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Solves the contextual bandit problem using Bayesian sampling over hashed features.
+ * <p/>
+ * This works like {@link ContextualBayesBandit} except that there is no feature map.  Instead,
+ * each arm is described by a list of feature names at the time it is scored.  Feature names are
+ * hashed into a fixed number of buckets and the beta state is kept for each bucket.  This means
+ * that memory use doesn't depend on how many arms or features there are and arms can come and go
+ * without any change to the model.  Colliding features share state, so the number of buckets
+ * should be comfortably larger than the number of features that matter.
+ * <p/>
+ * When an arm is trained, a single observation is spread evenly over the buckets for its
+ * features.  When arms are scored, the weight for each bucket is sampled at most once per
+ * request and only for buckets that are actually used.
+ */
+public class HashedContextualBandit {
+    private static final int SEED = 0x3c074a61;
+
+    private final int mask;
+    private final double[] alpha;
+    private final double[] beta;
+    private final BetaDistribution rand;
+
+    private final ThreadLocal<Scratch> scratch = new ThreadLocal<Scratch>() {
+        @Override
+        protected Scratch initialValue() {
+            return new Scratch(alpha.length);
+        }
+    };
+
+    /**
+     * @param bits    The state will have 2<sup>bits</sup> buckets.
+     * @param alpha_0 Prior successes for each bucket.
+     * @param beta_0  Prior failures for each bucket.
+     * @param gen     Source of randomness.
+     */
+    public HashedContextualBandit(int bits, double alpha_0, double beta_0, Random gen) {
+        int width = 1 << bits;
+        mask = width - 1;
+        alpha = new double[width];
+        beta = new double[width];
+        for (int j = 0; j < width; j++) {
+            alpha[j] = alpha_0;
+            beta[j] = beta_0;
+        }
+        rand = new BetaDistribution(1, 1, gen);
+    }
+
+    /**
+     * Converts feature names into bucket indexes.  Arms that are scored often should be hashed
+     * once and the result kept.
+     *
+     * @param features The names of the features of an arm.
+     * @return The buckets for those features.
+     */
+    public int[] hash(Collection<String> features) {
+        int[] r = new int[features.size()];
+        int i = 0;
+        for (String feature : features) {
+            r[i++] = MurmurHash.hash(feature.getBytes(Charsets.UTF_8), SEED) & mask;
+        }
+        return r;
+    }
+
+    /**
+     * Picks the arm with the best sampled score.
+     *
+     * @param arms The hashed features of each arm.
+     * @return The index of the chosen arm in the list.
+     */
+    public int sample(List<int[]> arms) {
+        Scratch s = scratch.get();
+        s.nextGeneration();
+        int best = -1;
+        double max = Double.NEGATIVE_INFINITY;
+        int i = 0;
+        for (int[] arm : arms) {
+            double score = score(arm, s);
+            if (best < 0 || score > max) {
+                best = i;
+                max = score;
+            }
+            i++;
+        }
+        return best;
+    }
+
+    /**
+     * Ranks arms by their sampled scores.
+     *
+     * @param arms The hashed features of each arm.
+     * @param top  Where to put the indexes of the best arms, best first.
+     * @return How many arms were returned.
+     */
+    public int rank(List<int[]> arms, int[] top) {
+        Scratch s = scratch.get();
+        s.nextGeneration();
+        TopK best = new TopK(Math.min(top.length, arms.size()));
+        int i = 0;
+        for (int[] arm : arms) {
+            best.offer(i++, score(arm, s));
+        }
+        return best.drainTo(top);
+    }
+
+    public void train(int[] arm, boolean success) {
+        double[] counts = success ? alpha : beta;
+        double weight = 1.0 / arm.length;
+        for (int bucket : arm) {
+            counts[bucket] += weight;
+        }
+    }
+
+    /**
+     * Returns the number of buckets.
+     */
+    public int size() {
+        return alpha.length;
+    }
+
+    private double score(int[] arm, Scratch s) {
+        double sum = 0;
+        for (int bucket : arm) {
+            if (s.stamp[bucket] != s.generation) {
+                double p = rand.nextDouble(alpha[bucket], beta[bucket]);
+                s.theta[bucket] = Math.log(p / (1 - p));
+                s.stamp[bucket] = s.generation;
+            }
+            sum += s.theta[bucket];
+        }
+        return sum;
+    }
+
+    /**
+     * Sampled weights for the current request.  A weight is only valid if its stamp matches
+     * the current generation, which avoids clearing the whole array for each request.
+     */
+    private static class Scratch {
+        private final double[] theta;
+        private final int[] stamp;
+        private int generation = 0;
+
+        private Scratch(int width) {
+            theta = new double[width];
+            stamp = new int[width];
+        }
+
+        private void nextGeneration() {
+            generation++;
+            if (generation == 0) {
+                // wrapped around so old stamps might look current
+                Arrays.fill(stamp, 0);
+                generation = 1;
+            }
+        }
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mapr.stats.bandit;
+
+import com.google.common.collect.Lists;
+import com.mapr.stats.random.AbstractBayesianDistribution;
+
+import java.util.List;
+
+/**
+ * Common implementation of deterministic index policies such as UCB1, KL-UCB and Bayes-UCB.
+ * <p/>
+ * Each arm has an index computed from the number of trials and the total reward for that arm
+ * together with the total number of trials \(t\) so far.  The arm with the largest index is
+ * chosen.  Indexes are kept in an {@link IndexedMaxHeap} so that choosing an arm costs
+ * \(O(1)\), ranking k arms costs \(O(k \log k)\) and training costs \(O(\log n)\).
+ * <p/>
+ * Strictly speaking, every index depends on \(t\) and thus changes on every trial.  Since
+ * the dependence is only through \(\log t\), the value of \(t\) used for the indexes is only
+ * refreshed each time the number of trials doubles.  At that point all indexes are recomputed
+ * in linear time which amortizes to a constant cost per trial.
+ * <p/>
+ * Arms that have never been tried have an infinite index so each arm is tried once before
+ * any arm is tried twice.
+ */
+public abstract class IndexBandit extends BayesianBandit {
+    private final long[] counts;
+    private final double[] sums;
+    private final IndexedMaxHeap heap;
+
+    private long trials = 0;
+    // the number of trials as of the last time that all indexes were refreshed
+    private long horizon = 1;
+
+    protected IndexBandit(int bandits) {
+        counts = new long[bandits];
+        sums = new double[bandits];
+        heap = new IndexedMaxHeap(bandits);
+        for (int i = 0; i < bandits; i++) {
+            heap.set(i, Double.POSITIVE_INFINITY);
+        }
+    }
+
+    /**
+     * Computes the index for an arm that has been tried at least once.
+     *
+     * @param n       How many times the arm has been tried.
+     * @param sum     The total reward from this arm.
+     * @param horizon The number of trials for all arms.
+     * @return The index for the arm.
+     */
+    protected abstract double index(long n, double sum, long horizon);
+
+    /**
+     * Returns the arm with the largest index.
+     *
+     * @return The index of the chosen bandit or -1 if there are no bandits.
+     */
+    @Override
+    public int sample() {
+        if (counts.length == 0) {
+            return -1;
+        }
+        return heap.top();
+    }
+
+    /**
+     * Returns the arms with the largest indexes, largest first.
+     *
+     * @param sampleSize The number of bandits to return.
+     * @return A list of the indexes of the bandits.
+     */
+    @Override
+    public List<Integer> rank(int sampleSize) {
+        int[] top = new int[Math.min(sampleSize, counts.length)];
+        int n = heap.top(top);
+        List<Integer> r = Lists.newArrayListWithCapacity(n);
+        for (int i = 0; i < n; i++) {
+            r.add(top[i]);
+        }
+        return r;
+    }
+
+    @Override
+    public void train(int bandit, double reward) {
+        counts[bandit]++;
+        sums[bandit] += reward;
+        trials++;
+
+        if (trials >= 2 * horizon) {
+            horizon = trials;
+            for (int i = 0; i < counts.length; i++) {
+                heap.set(i, currentIndex(i));
+            }
+            heap.heapify();
+        } else {
+            heap.update(bandit, currentIndex(bandit));
+        }
+    }
+
+    /**
+     * Copies the current indexes.  These aren't random so repeated calls give the same scores.
+     */
+    @Override
+    public void sampleAll(double[] scores) {
+        for (int i = 0; i < counts.length; i++) {
+            scores[i] = heap.key(i);
+        }
+    }
+
+    @Override
+    public int size() {
+        return counts.length;
+    }
+
+    @Override
+    public double getMean(int k) {
+        return counts[k] > 0 ? sums[k] / counts[k] : 0;
+    }
+
+    /**
+     * Returns the current index for an arm.
+     */
+    public double getIndex(int k) {
+        return heap.key(k);
+    }
+
+    @Override
+    public boolean addModelDistribution(AbstractBayesianDistribution distribution) {
+        throw new UnsupportedOperationException("Can't add a distribution to an index policy");
+    }
+
+    private double currentIndex(int i) {
+        if (counts[i] == 0) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return index(counts[i], sums[i], horizon);
+    }
+}
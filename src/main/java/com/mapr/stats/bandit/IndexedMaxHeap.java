@@ -0,0 +1,203 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mapr.stats.bandit;
+
+/**
+ * A binary max-heap over the items 0..n-1 that allows the key of any item to be changed
+ * in \(O(\log n)\) time.  The largest item can be found in constant time and the
+ * k largest items can be found in \(O(k \log k)\) time without disturbing the heap.
+ * <p/>
+ * Items with equal keys are ordered by index so that ties always go to the lowest index.
+ */
+class IndexedMaxHeap {
+    // heap[pos] is the item at pos and position[item] is where item is in the heap
+    private final int[] heap;
+    private final int[] position;
+    private final double[] key;
+
+    IndexedMaxHeap(int n) {
+        heap = new int[n];
+        position = new int[n];
+        key = new double[n];
+        for (int i = 0; i < n; i++) {
+            heap[i] = i;
+            position[i] = i;
+        }
+    }
+
+    int size() {
+        return heap.length;
+    }
+
+    double key(int item) {
+        return key[item];
+    }
+
+    /**
+     * Returns the item with the largest key.
+     */
+    int top() {
+        return heap[0];
+    }
+
+    /**
+     * Changes the key for an item and restores the heap order.
+     */
+    void update(int item, double value) {
+        double old = key[item];
+        key[item] = value;
+        if (value > old) {
+            siftUp(position[item]);
+        } else if (value < old) {
+            siftDown(position[item]);
+        }
+    }
+
+    /**
+     * Changes the key for an item without restoring heap order.  Call {@link #heapify()}
+     * after changing many keys this way.
+     */
+    void set(int item, double value) {
+        key[item] = value;
+    }
+
+    /**
+     * Restores heap order in linear time.
+     */
+    void heapify() {
+        for (int pos = heap.length / 2 - 1; pos >= 0; pos--) {
+            siftDown(pos);
+        }
+    }
+
+    /**
+     * Finds the items with the largest keys by a best-first walk of the heap.
+     *
+     * @param r Where to put the items, largest first.  Up to r.length items are returned.
+     * @return The number of items found.
+     */
+    int top(int[] r) {
+        int k = Math.min(r.length, heap.length);
+        if (k == 0) {
+            return 0;
+        }
+
+        // max-heap of heap positions that are candidates for the next largest item
+        int[] candidates = new int[k + 1];
+        int n = 0;
+        candidates[n++] = 0;
+        for (int j = 0; j < k; j++) {
+            int pos = candidates[0];
+            r[j] = heap[pos];
+
+            // replace the root with the first child, then add the second child
+            int child = 2 * pos + 1;
+            if (child < heap.length) {
+                candidates[0] = child;
+                siftDownCandidate(candidates, 0, n);
+                if (child + 1 < heap.length) {
+                    candidates[n++] = child + 1;
+                    siftUpCandidate(candidates, n - 1);
+                }
+            } else {
+                candidates[0] = candidates[--n];
+                siftDownCandidate(candidates, 0, n);
+            }
+        }
+        return k;
+    }
+
+    private void siftUp(int pos) {
+        int item = heap[pos];
+        while (pos > 0) {
+            int parent = (pos - 1) / 2;
+            if (!above(item, heap[parent])) {
+                break;
+            }
+            move(heap[parent], pos);
+            pos = parent;
+        }
+        move(item, pos);
+    }
+
+    private void siftDown(int pos) {
+        int item = heap[pos];
+        while (true) {
+            int child = 2 * pos + 1;
+            if (child >= heap.length) {
+                break;
+            }
+            if (child + 1 < heap.length && above(heap[child + 1], heap[child])) {
+                child++;
+            }
+            if (!above(heap[child], item)) {
+                break;
+            }
+            move(heap[child], pos);
+            pos = child;
+        }
+        move(item, pos);
+    }
+
+    private void move(int item, int pos) {
+        heap[pos] = item;
+        position[item] = pos;
+    }
+
+    /**
+     * Returns true if item a belongs above item b.
+     */
+    private boolean above(int a, int b) {
+        return key[a] > key[b] || (key[a] == key[b] && a < b);
+    }
+
+    private void siftUpCandidate(int[] candidates, int j) {
+        int pos = candidates[j];
+        while (j > 0) {
+            int parent = (j - 1) / 2;
+            if (!above(heap[pos], heap[candidates[parent]])) {
+                break;
+            }
+            candidates[j] = candidates[parent];
+            j = parent;
+        }
+        candidates[j] = pos;
+    }
+
+    private void siftDownCandidate(int[] candidates, int j, int n) {
+        if (n == 0) {
+            return;
+        }
+        int pos = candidates[j];
+        while (true) {
+            int child = 2 * j + 1;
+            if (child >= n) {
+                break;
+            }
+            if (child + 1 < n && above(heap[candidates[child + 1]], heap[candidates[child]])) {
+                child++;
+            }
+            if (!above(heap[candidates[child]], heap[pos])) {
+                break;
+            }
+            candidates[j] = candidates[child];
+            j = child;
+        }
+        candidates[j] = pos;
+    }
+}
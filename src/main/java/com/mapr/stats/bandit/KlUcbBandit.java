@@ -0,0 +1,65 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mapr.stats.bandit;
+
+/**
+ * The KL-UCB policy of Garivier and Capp&eacute; for rewards in [0,1].  The index for each arm is
+ * the largest \(q\) such that
+ * \[
+ *   n \, d(\bar x, q) \le \log t
+ * \]
+ * where \(d\) is the Kullback-Leibler divergence between Bernoulli distributions, \(\bar x\) is
+ * the average reward for the arm, \(n\) is the number of times it has been tried and \(t\) is the
+ * total number of trials.  The index is found by bisection.
+ */
+public class KlUcbBandit extends IndexBandit {
+    private static final double TOLERANCE = 1e-6;
+
+    public KlUcbBandit(int bandits) {
+        super(bandits);
+    }
+
+    @Override
+    protected double index(long n, double sum, long horizon) {
+        double p = Math.min(1, Math.max(0, sum / n));
+        double bound = Math.log(horizon) / n;
+
+        double low = p;
+        double high = 1;
+        while (high - low > TOLERANCE) {
+            double q = (low + high) / 2;
+            if (divergence(p, q) > bound) {
+                high = q;
+            } else {
+                low = q;
+            }
+        }
+        return low;
+    }
+
+    static double divergence(double p, double q) {
+        double r = 0;
+        if (p > 0) {
+            r += p * Math.log(p / q);
+        }
+        if (p < 1) {
+            r += (1 - p) * Math.log((1 - p) / (1 - q));
+        }
+        return r;
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mapr.stats.bandit;
+
+import org.apache.mahout.math.DenseMatrix;
+import org.apache.mahout.math.DenseVector;
+import org.apache.mahout.math.Matrix;
+import org.apache.mahout.math.Vector;
+
+import java.util.Random;
+
+/**
+ * Solves the contextual bandit problem with Thompson sampling on a Bayesian linear model.
+ * <p/>
+ * Each arm is described by a context vector \(x\) that may change from request to request.  The
+ * expected reward is modeled as \(x^T \theta\) with a Gaussian prior on \(\theta\).  After observing
+ * rewards \(r_i\) for contexts \(x_i\), the posterior for \(\theta\) is normal with precision and mean
+ * \[
+ *   A = \lambda I + \sum_i x_i x_i^T \\
+ *   \mu = A^{-1} \sum_i r_i x_i
+ * \]
+ * Rather than inverting \(A\), we keep its Cholesky factor \(A = L L^T\).  Each observation changes
+ * \(A\) by a rank-one matrix so \(L\) can be updated in \(O(d^2)\) time instead of being recomputed in
+ * \(O(d^3)\) time.  Finding \(\mu\) takes two triangular solves and a sample of \(\theta\) is
+ * \[
+ *   \theta = \mu + v L^{-T} z
+ * \]
+ * where \(z\) is a vector of independent unit normal deviates.  This also takes one triangular solve.
+ * <p/>
+ * Unlike {@link ContextualBayesBandit}, this model accounts for correlation between features.
+ */
+public class LinearThompsonBandit {
+    private final int d;
+    private final double scale;
+    private final Random gen;
+
+    // lower triangular factor of the posterior precision
+    private final Matrix L;
+    private final Vector b;
+    private final Vector mu;
+    private boolean muIsCurrent = true;
+
+    private final double[] work;
+
+    /**
+     * @param d      The number of features in a context.
+     * @param lambda The precision of the prior on each weight.
+     * @param scale  Multiplier on the posterior spread when sampling.  Values less than 1 exploit more.
+     * @param gen    Source of randomness.
+     */
+    public LinearThompsonBandit(int d, double lambda, double scale, Random gen) {
+        this.d = d;
+        this.scale = scale;
+        this.gen = gen;
+        L = new DenseMatrix(d, d);
+        for (int i = 0; i < d; i++) {
+            L.setQuick(i, i, Math.sqrt(lambda));
+        }
+        b = new DenseVector(d);
+        mu = new DenseVector(d);
+        work = new double[d];
+    }
+
+    /**
+     * Picks the arm with the best sampled reward.
+     *
+     * @param contexts One row per arm describing that arm for this request.
+     * @return The index of the chosen arm.
+     */
+    public int sample(Matrix contexts) {
+        Vector theta = sampleTheta();
+        int best = -1;
+        double max = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < contexts.numRows(); i++) {
+            double score = contexts.viewRow(i).dot(theta);
+            if (best < 0 || score > max) {
+                best = i;
+                max = score;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Ranks the arms by sampled reward.
+     *
+     * @param contexts One row per arm describing that arm for this request.
+     * @param top      Where to put the best arms, best first.
+     * @return How many arms were returned.
+     */
+    public int rank(Matrix contexts, int[] top) {
+        Vector theta = sampleTheta();
+        TopK best = new TopK(Math.min(top.length, contexts.numRows()));
+        for (int i = 0; i < contexts.numRows(); i++) {
+            best.offer(i, contexts.viewRow(i).dot(theta));
+        }
+        return best.drainTo(top);
+    }
+
+    /**
+     * Updates the posterior with a single observation.
+     *
+     * @param x      The context of the arm that was chosen.
+     * @param reward The reward that was observed.
+     */
+    public void train(Vector x, double reward) {
+        for (int i = 0; i < d; i++) {
+            work[i] = x.getQuick(i);
+            b.setQuick(i, b.getQuick(i) + reward * work[i]);
+        }
+        choleskyUpdate(work);
+        muIsCurrent = false;
+    }
+
+    /**
+     * Samples a weight vector from the posterior.
+     */
+    public Vector sampleTheta() {
+        double[] z = new double[d];
+        for (int i = 0; i < d; i++) {
+            z[i] = gen.nextGaussian();
+        }
+        backSolve(z);
+
+        Vector mean = getMean();
+        Vector theta = new DenseVector(d);
+        for (int i = 0; i < d; i++) {
+            theta.setQuick(i, mean.getQuick(i) + scale * z[i]);
+        }
+        return theta;
+    }
+
+    /**
+     * Returns the posterior mean of the weights.
+     */
+    public Vector getMean() {
+        if (!muIsCurrent) {
+            for (int i = 0; i < d; i++) {
+                work[i] = b.getQuick(i);
+            }
+            forwardSolve(work);
+            backSolve(work);
+            for (int i = 0; i < d; i++) {
+                mu.setQuick(i, work[i]);
+            }
+            muIsCurrent = true;
+        }
+        return mu;
+    }
+
+    /**
+     * Returns the Cholesky factor of the posterior precision.
+     */
+    public Matrix getCholeskyFactor() {
+        return L;
+    }
+
+    /**
+     * Replaces \(L\) with the Cholesky factor of \(L L^T + x x^T\).  The contents of x are
+     * destroyed.
+     */
+    private void choleskyUpdate(double[] x) {
+        for (int k = 0; k < d; k++) {
+            double lkk = L.getQuick(k, k);
+            double r = Math.hypot(lkk, x[k]);
+            double c = r / lkk;
+            double s = x[k] / lkk;
+            L.setQuick(k, k, r);
+            for (int i = k + 1; i < d; i++) {
+                double lik = (L.getQuick(i, k) + s * x[i]) / c;
+                L.setQuick(i, k, lik);
+                x[i] = c * x[i] - s * lik;
+            }
+        }
+    }
+
+    /**
+     * Solves \(L y = x\) in place.
+     */
+    private void forwardSolve(double[] x) {
+        for (int i = 0; i < d; i++) {
+            double sum = x[i];
+            for (int j = 0; j < i; j++) {
+                sum -= L.getQuick(i, j) * x[j];
+            }
+            x[i] = sum / L.getQuick(i, i);
+        }
+    }
+
+    /**
+     * Solves \(L^T y = x\) in place.
+     */
+    private void backSolve(double[] x) {
+        for (int i = d - 1; i >= 0; i--) {
+            double sum = x[i];
+            for (int j = i + 1; j < d; j++) {
+                sum -= L.getQuick(j, i) * x[j];
+            }
+            x[i] = sum / L.getQuick(i, i);
+        }
+    }
+}
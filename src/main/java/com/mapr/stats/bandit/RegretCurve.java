@@ -0,0 +1,209 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mapr.stats.bandit;
+
+import com.google.common.base.Preconditions;
+import com.mapr.stats.io.ResultSink;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Accumulates a regret curve over many replications of an experiment.
+ * <p/>
+ * The steps of an experiment are grouped into buckets and for each bucket we keep only the
+ * count, mean and sum of squared deviations from the mean of the values that were added.  This
+ * takes a few primitive arrays no matter how many replications are run, unlike keeping a
+ * summarizer for each bucket.  Values are added with Welford's update and curves are merged with
+ * the pairwise update of Chan et al so the standard deviation doesn't suffer from the
+ * cancellation that comes with keeping a raw sum of squares.
+ * <p/>
+ * Buckets can be of equal width or log-spaced.  Log-spaced buckets get wider by steps of 1, 2
+ * and 5 so that long experiments still give a curve with a reasonable number of points.
+ * <p/>
+ * Curves with the same buckets can be merged so that replications can be accumulated
+ * separately and then combined.
+ */
+public class RegretCurve {
+    // bucket k covers the zero-based steps from bounds[k] up to, but not including, bounds[k+1]
+    private final int[] bounds;
+    private final int[] labels;
+    private final int width;
+
+    private final long[] count;
+    private final double[] mean;
+    // sum of squared deviations from the mean
+    private final double[] m2;
+
+    private RegretCurve(int[] bounds, int[] labels, int width) {
+        this.bounds = bounds;
+        this.labels = labels;
+        this.width = width;
+        count = new long[labels.length];
+        mean = new double[labels.length];
+        m2 = new double[labels.length];
+    }
+
+    /**
+     * Creates a curve with buckets of equal width.  Each bucket is labeled with its first
+     * (zero-based) step.
+     *
+     * @param maxSteps   How many steps are in each experiment.
+     * @param bucketSize How many steps go into each bucket.
+     */
+    public static RegretCurve linear(int maxSteps, int bucketSize) {
+        Preconditions.checkArgument(bucketSize > 0, "Bucket size must be positive");
+        int n = (maxSteps + bucketSize - 1) / bucketSize;
+        int[] bounds = new int[n + 1];
+        int[] labels = new int[n];
+        for (int k = 0; k < n; k++) {
+            bounds[k] = k * bucketSize;
+            labels[k] = k * bucketSize;
+        }
+        bounds[n] = maxSteps;
+        return new RegretCurve(bounds, labels, bucketSize);
+    }
+
+    /**
+     * Creates a curve with log-spaced buckets.  The first fifty or so buckets hold a single step,
+     * after which buckets widen to 2, 5, 10, 20 and so on steps.  Each bucket is labeled with the
+     * number of steps completed at its end.  Steps after the end of the last full bucket are not
+     * part of any bucket.
+     *
+     * @param maxSteps How many steps are in each experiment.
+     */
+    public static RegretCurve logSpaced(int maxSteps) {
+        int[] bounds = new int[maxSteps + 1];
+        int n = 0;
+        int delta = 1;
+        for (int i = 0; i < maxSteps; i++) {
+            if (i > 50 * delta) {
+                delta = bump(delta);
+            }
+            if ((i + 1) % delta == 0) {
+                bounds[++n] = i + 1;
+            }
+        }
+        return new RegretCurve(Arrays.copyOf(bounds, n + 1), Arrays.copyOfRange(bounds, 1, n + 1), 0);
+    }
+
+    /**
+     * Returns a curve with the same buckets as this one but no data.
+     */
+    public RegretCurve emptyCopy() {
+        return new RegretCurve(bounds, labels, width);
+    }
+
+    /**
+     * Returns the number of buckets.
+     */
+    public int size() {
+        return labels.length;
+    }
+
+    /**
+     * Returns the bucket that contains a step, or -1 if the step isn't in any bucket.
+     *
+     * @param step The zero-based step.
+     */
+    public int bucket(int step) {
+        if (step < 0 || step >= bounds[bounds.length - 1]) {
+            return -1;
+        } else if (width > 0) {
+            return step / width;
+        } else {
+            int k = Arrays.binarySearch(bounds, step);
+            return k >= 0 ? k : -k - 2;
+        }
+    }
+
+    /**
+     * Returns the number of steps that have been completed at the end of a bucket.
+     */
+    public int end(int bucket) {
+        return bounds[bucket + 1];
+    }
+
+    public int label(int bucket) {
+        return labels[bucket];
+    }
+
+    public void add(int bucket, double x) {
+        long n = ++count[bucket];
+        double delta = x - mean[bucket];
+        mean[bucket] += delta / n;
+        m2[bucket] += delta * (x - mean[bucket]);
+    }
+
+    /**
+     * Adds the data from another curve with the same buckets into this one.
+     */
+    public void merge(RegretCurve other) {
+        Preconditions.checkArgument(Arrays.equals(bounds, other.bounds), "Can't merge curves with different buckets");
+        for (int k = 0; k < labels.length; k++) {
+            long n2 = other.count[k];
+            if (n2 == 0) {
+                continue;
+            }
+            long n1 = count[k];
+            long n = n1 + n2;
+            double delta = other.mean[k] - mean[k];
+            mean[k] += delta * n2 / n;
+            m2[k] += other.m2[k] + delta * delta * ((double) n1 * n2 / n);
+            count[k] = n;
+        }
+    }
+
+    public long count(int bucket) {
+        return count[bucket];
+    }
+
+    public double mean(int bucket) {
+        return count[bucket] > 0 ? mean[bucket] : Double.NaN;
+    }
+
+    /**
+     * Returns the sample standard deviation of the values in a bucket.
+     */
+    public double sd(int bucket) {
+        return Math.sqrt(m2[bucket] / (count[bucket] - 1));
+    }
+
+    /**
+     * Writes a row with the label and the mean for each bucket that has data.  The sink should have
+     * two columns, typically called n and mean.
+     */
+    public void write(ResultSink out) throws IOException {
+        for (int k = 0; k < labels.length; k++) {
+            if (count[k] > 0) {
+                out.add(labels[k]).add(mean(k), 4).endRow();
+            }
+        }
+    }
+
+    private static int bump(int delta) {
+        int multiplier = 1;
+        while (delta >= 10) {
+            multiplier *= 10;
+            delta /= 10;
+        }
+        // steps each of 1,2,5 up to next level
+        delta = (int) (4 * delta - delta * delta / 3 - 1.5);
+        return delta * multiplier;
+    }
+}
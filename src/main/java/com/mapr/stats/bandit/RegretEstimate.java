@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mapr.stats.bandit;
+
+import java.util.Arrays;
+
+/**
+ * The estimate of final cumulative regret from a set of replications along with a 95% confidence
+ * interval for its mean.
+ * <p/>
+ * The interval uses the Student t distribution.  The t quantile is computed with a Cornish-Fisher
+ * expansion around the normal quantile which is accurate to better than 0.02% for 5 or more
+ * degrees of freedom.
+ */
+public class RegretEstimate {
+    private static final double Z_975 = 1.959963984540054;
+
+    private final int replications;
+    private final double mean;
+    private final double sd;
+    private final double halfWidth;
+    private final double median;
+    private final double target;
+
+    private RegretEstimate(int replications, double mean, double sd, double halfWidth, double median, double target) {
+        this.replications = replications;
+        this.mean = mean;
+        this.sd = sd;
+        this.halfWidth = halfWidth;
+        this.median = median;
+        this.target = target;
+    }
+
+    /**
+     * Summarizes the first n values of x.
+     *
+     * @param x      Final regret for each replication.
+     * @param n      How many replications have been done.
+     * @param target The desired half-width of the confidence interval.
+     */
+    static RegretEstimate of(double[] x, int n, double target) {
+        double mean = 0;
+        for (int i = 0; i < n; i++) {
+            mean += (x[i] - mean) / (i + 1);
+        }
+        double ss = 0;
+        for (int i = 0; i < n; i++) {
+            ss += (x[i] - mean) * (x[i] - mean);
+        }
+        double sd = n > 1 ? Math.sqrt(ss / (n - 1)) : Double.NaN;
+        double halfWidth = n > 1 ? tQuantile(n - 1) * sd / Math.sqrt(n) : Double.POSITIVE_INFINITY;
+
+        double[] sorted = Arrays.copyOf(x, n);
+        Arrays.sort(sorted);
+        int mid = n / 2;
+        double median = n == 0 ? Double.NaN : n % 2 == 1 ? sorted[mid] : (sorted[mid - 1] + sorted[mid]) / 2;
+        return new RegretEstimate(n, mean, sd, halfWidth, median, target);
+    }
+
+    /**
+     * Returns the 97.5% quantile of the t distribution.
+     */
+    static double tQuantile(int df) {
+        double z = Z_975;
+        double z2 = z * z;
+        double g1 = (z2 + 1) * z / 4;
+        double g2 = ((5 * z2 + 16) * z2 + 3) * z / 96;
+        double g3 = (((3 * z2 + 19) * z2 + 17) * z2 - 15) * z / 384;
+        double g4 = ((((79 * z2 + 776) * z2 + 1482) * z2 - 1920) * z2 - 945) * z / 92160;
+        double v = df;
+        return z + (g1 + (g2 + (g3 + g4 / v) / v) / v) / v;
+    }
+
+    public int getReplications() {
+        return replications;
+    }
+
+    public double getMean() {
+        return mean;
+    }
+
+    /**
+     * Returns the sample standard deviation of the final regret.
+     */
+    public double getSd() {
+        return sd;
+    }
+
+    /**
+     * Returns the half-width of the 95% confidence interval for the mean.  This is the precision
+     * that was actually achieved.
+     */
+    public double getHalfWidth() {
+        return halfWidth;
+    }
+
+    public double getMedian() {
+        return median;
+    }
+
+    /**
+     * Returns the half-width that was asked for.
+     */
+    public double getTarget() {
+        return target;
+    }
+
+    /**
+     * Returns true if the target precision was reached.
+     */
+    public boolean isConverged() {
+        return halfWidth <= target;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%.4f +/- %.4f (n=%d, target %.4f)", mean, halfWidth, replications, target);
+    }
+}
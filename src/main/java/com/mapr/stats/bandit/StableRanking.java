@@ -0,0 +1,277 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mapr.stats.bandit;
+
+import com.google.common.collect.Lists;
+import com.mapr.stats.random.AbstractBayesianDistribution;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Gives a ranking that doesn't change from one request to the next for surfaces such as cached
+ * pages that can't use a fresh Thompson draw for every view.
+ * <p/>
+ * Arms are ordered by their posterior probability of being among the top k arms, with ties
+ * broken by the posterior mean.  The probabilities are estimated by Monte Carlo.  A fixed number
+ * of joint draws of all of the arm means is kept and for each draw we remember which arms were in
+ * the top k.  The probability for an arm is the fraction of draws in which it was in the top
+ * k.  The probability that each arm is the very best is kept the same way.
+ * <p/>
+ * Training an arm only marks it as changed.  When {@link #refresh()} is called, new samples are
+ * taken for the changed arms only, using {@link AbstractBayesianDistribution#nextMeans}.  A draw
+ * only needs its top k recomputed if a changed arm was or now is in its top k.  Between
+ * refreshes, {@link #rank(int)} returns a view of the cached ranking so it costs nothing beyond
+ * reading the first k entries.
+ * <p/>
+ * Memory use is a double for every arm and draw.  A few hundred draws are generally plenty to
+ * separate the arms that matter.  Like the bandits themselves, this class is not thread-safe.
+ */
+public class StableRanking {
+    private final BayesianBandit bandit;
+    private final List<AbstractBayesianDistribution> arms;
+    private final int k;
+    private final int draws;
+
+    // samples[d][i] is the sample of the mean of arm i in draw d
+    private final double[][] samples;
+    // members[d] has the arms in the top k of draw d, largest first
+    private final int[][] members;
+    private final int[] topCount;
+    private final int[] bestCount;
+
+    private final boolean[] dirty;
+    private final int[] dirtyList;
+    private int dirtySize = 0;
+    private boolean initialized = false;
+
+    private List<Integer> ranking = Collections.emptyList();
+
+    /**
+     * @param bandit The bandit to rank.  This must have a posterior distribution for every arm.
+     * @param k      How many arms are shown.  Arms are ranked by the probability of being in the
+     *               top k.
+     * @param draws  How many joint samples to use for the probability estimates.
+     */
+    public StableRanking(BayesianBandit bandit, int k, int draws) {
+        this.bandit = bandit;
+        this.arms = Lists.newArrayList(bandit);
+        int n = bandit.size();
+        if (arms.size() != n) {
+            throw new IllegalArgumentException("Stable ranking needs a posterior distribution for each arm");
+        }
+        if (k < 1 || n < 1 || draws < 1) {
+            throw new IllegalArgumentException("Need at least one arm, one draw and k > 0");
+        }
+        this.k = Math.min(k, n);
+        this.draws = draws;
+
+        samples = new double[draws][n];
+        members = new int[draws][this.k];
+        topCount = new int[n];
+        bestCount = new int[n];
+        dirty = new boolean[n];
+        dirtyList = new int[n];
+    }
+
+    /**
+     * Trains the underlying bandit and marks the arm as changed.
+     */
+    public void train(int arm, double reward) {
+        bandit.train(arm, reward);
+        invalidate(arm);
+    }
+
+    /**
+     * Marks an arm as changed.  This is needed if the bandit is trained directly.
+     */
+    public void invalidate(int arm) {
+        if (!dirty[arm]) {
+            dirty[arm] = true;
+            dirtyList[dirtySize++] = arm;
+        }
+    }
+
+    /**
+     * Returns how many arms have changed since the last refresh.
+     */
+    public int getChangedArms() {
+        return dirtySize;
+    }
+
+    /**
+     * Brings the probabilities and the ranking up to date.  The first refresh samples all arms.
+     * After that only arms that have changed are sampled again.
+     *
+     * @return The number of draws whose top k had to be recomputed.
+     */
+    public int refresh() {
+        int recomputed;
+        if (!initialized) {
+            double[] row = new double[draws];
+            for (int i = 0; i < arms.size(); i++) {
+                arms.get(i).nextMeans(row, 0, draws);
+                for (int d = 0; d < draws; d++) {
+                    samples[d][i] = row[d];
+                }
+            }
+            initialized = true;
+            clearDirty();
+            recomputed = recount();
+        } else if (dirtySize > 0) {
+            recomputed = update();
+        } else {
+            return 0;
+        }
+        buildRanking();
+        return recomputed;
+    }
+
+    /**
+     * Returns the top arms in order of their probability of being in the top k.  If the
+     * ranking has never been computed, it is computed first.  Otherwise the cached ranking is
+     * returned even if arms have changed since the last {@link #refresh()}.
+     *
+     * @param n How many arms to return.  At most k arms are ranked.
+     * @return A read-only list of arm indexes.
+     */
+    public List<Integer> rank(int n) {
+        if (!initialized) {
+            refresh();
+        }
+        return ranking.subList(0, Math.min(n, ranking.size()));
+    }
+
+    /**
+     * Returns the estimated probability that an arm is among the top k as of the last refresh.
+     */
+    public double getProbabilityTopK(int arm) {
+        return (double) topCount[arm] / draws;
+    }
+
+    /**
+     * Returns the estimated probability that an arm is the best as of the last refresh.
+     */
+    public double getProbabilityBest(int arm) {
+        return (double) bestCount[arm] / draws;
+    }
+
+    private int update() {
+        boolean[] changedDraws = new boolean[draws];
+        double[] row = new double[draws];
+        for (int j = 0; j < dirtySize; j++) {
+            int arm = dirtyList[j];
+            arms.get(arm).nextMeans(row, 0, draws);
+            for (int d = 0; d < draws; d++) {
+                // the smallest member of the top k is the bar to get in
+                double bar = samples[d][members[d][k - 1]];
+                double old = samples[d][arm];
+                if (old >= bar || row[d] >= bar) {
+                    changedDraws[d] = true;
+                }
+                samples[d][arm] = row[d];
+            }
+        }
+        clearDirty();
+
+        int recomputed = 0;
+        TopK top = new TopK(k);
+        for (int d = 0; d < draws; d++) {
+            if (changedDraws[d]) {
+                uncount(d);
+                select(d, top);
+                recomputed++;
+            }
+        }
+        return recomputed;
+    }
+
+    /**
+     * Recomputes the top k for every draw from scratch.
+     *
+     * @return The number of draws.
+     */
+    int recount() {
+        Arrays.fill(topCount, 0);
+        Arrays.fill(bestCount, 0);
+        TopK top = new TopK(k);
+        for (int d = 0; d < draws; d++) {
+            select(d, top);
+        }
+        return draws;
+    }
+
+    int[] getTopCounts() {
+        return topCount.clone();
+    }
+
+    private void uncount(int d) {
+        for (int arm : members[d]) {
+            topCount[arm]--;
+        }
+        bestCount[members[d][0]]--;
+    }
+
+    private void select(int d, TopK top) {
+        double[] x = samples[d];
+        top.clear();
+        for (int i = 0; i < x.length; i++) {
+            top.offer(i, x[i]);
+        }
+        top.drainTo(members[d]);
+        for (int arm : members[d]) {
+            topCount[arm]++;
+        }
+        bestCount[members[d][0]]++;
+    }
+
+    private void clearDirty() {
+        for (int j = 0; j < dirtySize; j++) {
+            dirty[dirtyList[j]] = false;
+        }
+        dirtySize = 0;
+    }
+
+    private void buildRanking() {
+        final double[] means = new double[arms.size()];
+        List<Integer> candidates = Lists.newArrayList();
+        for (int i = 0; i < means.length; i++) {
+            means[i] = bandit.getMean(i);
+            if (topCount[i] > 0) {
+                candidates.add(i);
+            }
+        }
+        Collections.sort(candidates, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                int r = Integer.compare(topCount[b], topCount[a]);
+                if (r == 0) {
+                    r = Double.compare(means[b], means[a]);
+                }
+                if (r == 0) {
+                    r = Integer.compare(a, b);
+                }
+                return r;
+            }
+        });
+        // every draw puts k arms in its top k so there are always at least k candidates
+        ranking = Collections.unmodifiableList(Lists.newArrayList(candidates.subList(0, k)));
+    }
+}
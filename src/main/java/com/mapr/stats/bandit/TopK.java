@@ -0,0 +1,150 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mapr.stats.bandit;
+
+import com.google.common.collect.Lists;
+
+import java.util.List;
+
+/**
+ * Keeps the indexes of the k largest scores seen so far.  Scores are kept in a min-heap
+ * of primitives so that offering a score that doesn't make the cut costs a single comparison.
+ */
+class TopK {
+    private final int[] index;
+    private final double[] score;
+    private int size = 0;
+
+    TopK(int k) {
+        index = new int[k];
+        score = new double[k];
+    }
+
+    /**
+     * Selects the indexes of the largest values in an array.
+     *
+     * @param scores The values to select from.
+     * @param k      How many indexes to return.
+     * @return The indexes of the largest values, largest first.
+     */
+    static List<Integer> select(double[] scores, int k) {
+        TopK top = new TopK(Math.min(k, scores.length));
+        for (int i = 0; i < scores.length; i++) {
+            top.offer(i, scores[i]);
+        }
+        return top.toList();
+    }
+
+    int capacity() {
+        return index.length;
+    }
+
+    int size() {
+        return size;
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+    /**
+     * Returns the smallest score that is currently retained.  Only meaningful when full.
+     */
+    double threshold() {
+        return score[0];
+    }
+
+    void offer(int i, double x) {
+        if (size < index.length) {
+            // sift up
+            int k = size++;
+            while (k > 0) {
+                int parent = (k - 1) / 2;
+                if (score[parent] <= x) {
+                    break;
+                }
+                index[k] = index[parent];
+                score[k] = score[parent];
+                k = parent;
+            }
+            index[k] = i;
+            score[k] = x;
+        } else if (size > 0 && x > score[0]) {
+            siftDown(i, x, size);
+        }
+    }
+
+    /**
+     * Adds all of the entries retained by another TopK.
+     */
+    void merge(TopK other) {
+        for (int j = 0; j < other.size; j++) {
+            offer(other.index[j], other.score[j]);
+        }
+    }
+
+    /**
+     * Copies the retained indexes into an array, largest score first.  This empties
+     * the heap.
+     *
+     * @param r Where to put the results.  Must have at least size() entries.
+     * @return The number of indexes copied.
+     */
+    int drainTo(int[] r) {
+        int n = size;
+        while (size > 0) {
+            size--;
+            r[size] = index[0];
+            if (size > 0) {
+                siftDown(index[size], score[size], size);
+            }
+        }
+        return n;
+    }
+
+    List<Integer> toList() {
+        int[] r = new int[size];
+        int n = drainTo(r);
+        List<Integer> list = Lists.newArrayListWithCapacity(n);
+        for (int j = 0; j < n; j++) {
+            list.add(r[j]);
+        }
+        return list;
+    }
+
+    private void siftDown(int i, double x, int n) {
+        int k = 0;
+        while (true) {
+            int child = 2 * k + 1;
+            if (child >= n) {
+                break;
+            }
+            if (child + 1 < n && score[child + 1] < score[child]) {
+                child++;
+            }
+            if (x <= score[child]) {
+                break;
+            }
+            index[k] = index[child];
+            score[k] = score[child];
+            k = child;
+        }
+        index[k] = i;
+        score[k] = x;
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mapr.stats.bandit;
+
+/**
+ * The UCB1 policy of Auer, Cesa-Bianchi and Fischer.  The index for each arm is
+ * \[
+ *   \bar x + \sqrt{\frac{2 \log t}{n}}
+ * \]
+ * where \(\bar x\) is the average reward for the arm, \(n\) is the number of times it
+ * has been tried and \(t\) is the total number of trials.  Rewards should be in [0,1].
+ */
+public class Ucb1Bandit extends IndexBandit {
+    public Ucb1Bandit(int bandits) {
+        super(bandits);
+    }
+
+    @Override
+    protected double index(long n, double sum, long horizon) {
+        return sum / n + Math.sqrt(2 * Math.log(horizon) / n);
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mapr.stats.io;
+
+import com.google.common.collect.Maps;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Map;
+
+/**
+ * Writes results in a compact binary form with the values of each column stored together.
+ * <p/>
+ * The layout is
+ * <pre>
+ *   magic      int, 0x42524331
+ *   columns    int
+ *   names      for each column, an unsigned short byte count followed by that many bytes of
+ *              modified UTF-8 as written by DataOutputStream.writeUTF
+ *   blocks     repeated to the end of the file, each with
+ *     rows     int, at most 65536
+ *     values   rows doubles for the first column, then rows doubles for the second and so on
+ * </pre>
+ * All numbers are big-endian.  Integers that fit in 53 bits are stored exactly.
+ * <p/>
+ * Only one block is kept in memory at a time, so arbitrarily long tables can be written.
+ * Files can be read back with {@link #read(InputStream)}.  In R, use <code>readBin</code> with
+ * <code>endian = "big"</code>: <code>size = 4</code> integers for the magic number, column
+ * count and row counts, a <code>size = 2, signed = FALSE</code> integer followed by
+ * <code>readChar</code> for each name, and <code>"double"</code> for the values.  Names that
+ * are plain ASCII are the same in modified UTF-8.
+ */
+public class ColumnarSink extends ResultSink {
+    public static final int MAGIC = 0x42524331;
+
+    private static final int BLOCK_SIZE = 1 << 16;
+
+    private final DataOutputStream out;
+    private final double[][] block;
+    private int rows = 0;
+
+    /**
+     * @param out     Where to write.  This will be closed when the sink is closed.
+     * @param columns The names of the columns.
+     */
+    public ColumnarSink(OutputStream out, String... columns) {
+        super(columns);
+        this.out = new DataOutputStream(out);
+        block = new double[columns.length][BLOCK_SIZE];
+        try {
+            this.out.writeInt(MAGIC);
+            this.out.writeInt(columns.length);
+            for (String column : columns) {
+                this.out.writeUTF(column);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Can't write header", e);
+        }
+    }
+
+    @Override
+    protected void write(int column, long value) {
+        block[column][rows] = value;
+    }
+
+    @Override
+    protected void write(int column, double value, int digits) {
+        block[column][rows] = value;
+    }
+
+    @Override
+    protected void finishRow() throws IOException {
+        rows++;
+        if (rows == BLOCK_SIZE) {
+            writeBlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (rows > 0) {
+            writeBlock();
+        }
+        out.close();
+    }
+
+    private void writeBlock() throws IOException {
+        out.writeInt(rows);
+        for (double[] values : block) {
+            for (int i = 0; i < rows; i++) {
+                out.writeDouble(values[i]);
+            }
+        }
+        rows = 0;
+    }
+
+    /**
+     * Reads a whole file written by this class.
+     *
+     * @return The values of each column by name in the order the columns were written.
+     * @throws IOException If the input isn't in the right format.
+     */
+    public static Map<String, double[]> read(InputStream input) throws IOException {
+        DataInputStream in = new DataInputStream(input);
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a columnar result file");
+        }
+        String[] names = new String[in.readInt()];
+        for (int j = 0; j < names.length; j++) {
+            names[j] = in.readUTF();
+        }
+
+        double[][] values = new double[names.length][BLOCK_SIZE];
+        int total = 0;
+        while (true) {
+            int rows;
+            try {
+                rows = in.readInt();
+            } catch (EOFException e) {
+                break;
+            }
+            for (int j = 0; j < names.length; j++) {
+                if (values[j].length < total + rows) {
+                    values[j] = Arrays.copyOf(values[j], Math.max(2 * values[j].length, total + rows));
+                }
+                for (int i = 0; i < rows; i++) {
+                    values[j][total + i] = in.readDouble();
+                }
+            }
+            total += rows;
+        }
+
+        Map<String, double[]> r = Maps.newLinkedHashMap();
+        for (int j = 0; j < names.length; j++) {
+            r.put(names[j], Arrays.copyOf(values[j], total));
+        }
+        return r;
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mapr.stats.io;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
+
+/**
+ * Writes results as delimited text with a header line, much like a CSV or TSV file.
+ * <p/>
+ * Numbers are formatted directly into a byte buffer.  A double is scaled by a power of ten and
+ * rounded to a long whose digits are then written with a decimal point in the right place.  This
+ * gives the same text as <code>String.format("%.nf")</code> but avoids parsing the format string
+ * and building intermediate strings.  Values that are very large, not finite or so close to a
+ * rounding tie that the scaled value might round the wrong way are handed to
+ * <code>String.format</code> so the result is always the same.
+ */
+public class DelimitedSink extends ResultSink {
+    static final int MAX_DIGITS = 9;
+
+    private static final int BUFFER_SIZE = 1 << 16;
+    // largest scaled value that can be rounded exactly with room to spare
+    private static final double MAX_SCALED = 1e15;
+    private static final double TIE_TOLERANCE = 1e-6;
+
+    private static final long[] POWERS = new long[MAX_DIGITS + 1];
+
+    static {
+        POWERS[0] = 1;
+        for (int i = 1; i <= MAX_DIGITS; i++) {
+            POWERS[i] = 10 * POWERS[i - 1];
+        }
+    }
+
+    private final OutputStream out;
+    private final byte delimiter;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private final byte[] digits = new byte[20];
+    private int position = 0;
+
+    /**
+     * @param out       Where to write.  This will be closed when the sink is closed.
+     * @param delimiter What goes between values.
+     * @param columns   The names of the columns.
+     */
+    public DelimitedSink(OutputStream out, char delimiter, String... columns) {
+        super(columns);
+        this.out = out;
+        this.delimiter = (byte) delimiter;
+        try {
+            for (int i = 0; i < columns.length; i++) {
+                if (i > 0) {
+                    put(this.delimiter);
+                }
+                putAscii(columns[i]);
+            }
+            put((byte) '\n');
+        } catch (IOException e) {
+            throw new IllegalStateException("Can't write header", e);
+        }
+    }
+
+    @Override
+    protected void write(int column, long value) throws IOException {
+        separate(column);
+        putLong(value);
+    }
+
+    @Override
+    protected void write(int column, double value, int digits) throws IOException {
+        separate(column);
+        putFixed(value, digits);
+    }
+
+    @Override
+    protected void finishRow() throws IOException {
+        put((byte) '\n');
+    }
+
+    @Override
+    public void close() throws IOException {
+        flush();
+        out.close();
+    }
+
+    public void flush() throws IOException {
+        out.write(buffer, 0, position);
+        position = 0;
+        out.flush();
+    }
+
+    private void separate(int column) throws IOException {
+        if (column > 0) {
+            put(delimiter);
+        }
+    }
+
+    private void putFixed(double value, int n) throws IOException {
+        double scaled = Math.abs(value) * POWERS[n];
+        double fraction = scaled - Math.floor(scaled);
+        if (!(scaled < MAX_SCALED) || Math.abs(fraction - 0.5) < TIE_TOLERANCE + scaled * 1e-15) {
+            // infinite, NaN, huge or nearly a tie
+            putAscii(String.format(Locale.ROOT, "%." + n + "f", value));
+            return;
+        }
+
+        if (Double.doubleToRawLongBits(value) < 0) {
+            put((byte) '-');
+        }
+        long rounded = Math.round(scaled);
+        putLong(rounded / POWERS[n]);
+        if (n > 0) {
+            put((byte) '.');
+            long decimals = rounded % POWERS[n];
+            ensure(n);
+            for (int i = n - 1; i >= 0; i--) {
+                buffer[position + i] = (byte) ('0' + decimals % 10);
+                decimals /= 10;
+            }
+            position += n;
+        }
+    }
+
+    private void putLong(long value) throws IOException {
+        if (value == Long.MIN_VALUE) {
+            putAscii(Long.toString(value));
+            return;
+        }
+        if (value < 0) {
+            put((byte) '-');
+            value = -value;
+        }
+        int n = 0;
+        do {
+            digits[n++] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value > 0);
+        ensure(n);
+        while (n > 0) {
+            buffer[position++] = digits[--n];
+        }
+    }
+
+    private void putAscii(String s) throws IOException {
+        for (int i = 0; i < s.length(); i++) {
+            put((byte) s.charAt(i));
+        }
+    }
+
+    private void put(byte b) throws IOException {
+        ensure(1);
+        buffer[position++] = b;
+    }
+
+    private void ensure(int n) throws IOException {
+        if (position + n > buffer.length) {
+            out.write(buffer, 0, position);
+            position = 0;
+        }
+    }
+}
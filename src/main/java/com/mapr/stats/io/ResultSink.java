@@ -0,0 +1,141 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mapr.stats.io;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Receives tables of simulation results one row at a time.
+ * <p/>
+ * A row is written by adding one value for each column and then calling {@link #endRow()}.
+ * Each double value comes with the number of digits to keep after the decimal point, which is
+ * used by text formats and ignored by binary ones.
+ * <p/>
+ * Sinks buffer their output so the underlying file isn't touched on every row.  They must be
+ * closed to make sure that everything is written.
+ */
+public abstract class ResultSink implements Closeable {
+    private final String[] columns;
+    private int column = 0;
+
+    protected ResultSink(String... columns) {
+        this.columns = columns.clone();
+    }
+
+    /**
+     * The formats that can be chosen by file name.
+     */
+    public enum Format {
+        CSV, TSV, COLUMNAR;
+
+        /**
+         * Picks a format from the extension of a file name.  Names ending in .csv give {@link #CSV},
+         * names ending in .bin give {@link #COLUMNAR} and anything else gives {@link #TSV}.
+         */
+        public static Format forFile(String fileName) {
+            if (fileName.endsWith(".csv")) {
+                return CSV;
+            } else if (fileName.endsWith(".bin")) {
+                return COLUMNAR;
+            } else {
+                return TSV;
+            }
+        }
+    }
+
+    /**
+     * Opens a sink writing to a file with the format given by the file name.
+     *
+     * @param fileName Where to write the results.
+     * @param columns  The names of the columns.
+     * @throws FileNotFoundException If the file can't be created.
+     */
+    public static ResultSink open(String fileName, String... columns) throws FileNotFoundException {
+        return open(new FileOutputStream(fileName), Format.forFile(fileName), columns);
+    }
+
+    public static ResultSink open(OutputStream out, Format format, String... columns) {
+        switch (format) {
+            case CSV:
+                return new DelimitedSink(out, ',', columns);
+            case TSV:
+                return new DelimitedSink(out, '\t', columns);
+            case COLUMNAR:
+                return new ColumnarSink(new BufferedOutputStream(out, 1 << 16), columns);
+            default:
+                throw new IllegalArgumentException("Unknown format " + format);
+        }
+    }
+
+    public String[] getColumns() {
+        return columns.clone();
+    }
+
+    /**
+     * Adds an integer value for the next column.
+     */
+    public ResultSink add(long value) throws IOException {
+        write(nextColumn(), value);
+        return this;
+    }
+
+    /**
+     * Adds a real value for the next column.
+     *
+     * @param value  The value.
+     * @param digits How many digits to keep after the decimal point in text formats.
+     */
+    public ResultSink add(double value, int digits) throws IOException {
+        if (digits < 0 || digits > DelimitedSink.MAX_DIGITS) {
+            throw new IllegalArgumentException("Digits must be from 0 to " + DelimitedSink.MAX_DIGITS);
+        }
+        write(nextColumn(), value, digits);
+        return this;
+    }
+
+    /**
+     * Finishes the current row.
+     *
+     * @throws IllegalStateException If a value hasn't been added for every column.
+     */
+    public void endRow() throws IOException {
+        if (column != columns.length) {
+            throw new IllegalStateException(String.format("Row has %d values but there are %d columns", column, columns.length));
+        }
+        column = 0;
+        finishRow();
+    }
+
+    private int nextColumn() {
+        if (column >= columns.length) {
+            throw new IllegalStateException("Too many values for row with " + columns.length + " columns");
+        }
+        return column++;
+    }
+
+    protected abstract void write(int column, long value) throws IOException;
+
+    protected abstract void write(int column, double value, int digits) throws IOException;
+
+    protected abstract void finishRow() throws IOException;
+}
@@ -34,6 +34,8 @@ import org.apache.mahout.math.jet.random.AbstractContinousDistribution;
  * <ul>
  * <li>nextDouble() Sample \(x\) from the posterior of \(p_2\).</li>
  * <li>nextMean() Sample \(E[x]\) from the posterior of \(p_2\).</li>
+ * <li>nextMeans() Sample many values of \(E[x]\) at once.  The default implementation just
+ * calls nextMean() repeatedly, but implementations can often hoist setup out of the loop.</li>
  * <li>add() Add a new observation x to define a new posterior distribution.</li>
  * <li>posteriorDistribution() Return a copy of the posterior distribution.</li>
  * </ul>
@@ -46,6 +48,19 @@ public abstract class AbstractBayesianDistribution extends AbstractContinousDist
 
     public abstract double nextMean();
 
+    /**
+     * Fills part of an array with independent samples of the mean.
+     *
+     * @param out    Where to put the samples.
+     * @param offset Where the first sample goes.
+     * @param count  How many samples to take.
+     */
+    public void nextMeans(double[] out, int offset, int count) {
+        for (int i = 0; i < count; i++) {
+            out[offset + i] = nextMean();
+        }
+    }
+
     public abstract AbstractContinousDistribution posteriorDistribution();
 
     public abstract double getMean();
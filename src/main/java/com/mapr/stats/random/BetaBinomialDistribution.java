@@ -31,13 +31,25 @@ import java.util.Random;
  * \]
  * The nextDouble() method returns a sample of \(x\) and the nextMean()
  * returns a sample of \(\pi\).
+ * <p/>
+ * If a {@link BetaQuantileCache} is supplied, samples of \(\pi\) are taken from a tabulated
+ * inverse cdf whenever \(\alpha\) and \(\beta\) are small enough integers.
  */
 public class BetaBinomialDistribution extends AbstractBayesianDistribution {
     private final Random gen;
     private final BetaDistribution bd;
+    private final BetaQuantileCache quantiles;
+
+    // table for the current parameters, if any
+    private double[] table;
 
     public BetaBinomialDistribution(double alpha, double beta, Random gen) {
+        this(alpha, beta, gen, null);
+    }
+
+    public BetaBinomialDistribution(double alpha, double beta, Random gen, BetaQuantileCache quantiles) {
         this.gen = gen;
+        this.quantiles = quantiles;
         bd = new BetaDistribution(alpha, beta, gen);
     }
 
@@ -57,6 +69,7 @@ public class BetaBinomialDistribution extends AbstractBayesianDistribution {
 
     @Override
     public void add(double x) {
+        table = null;
         if (x == 0.0) {
             bd.setBeta(bd.getBeta() + 1);
         } else if (x == 1) {
@@ -68,9 +81,32 @@ public class BetaBinomialDistribution extends AbstractBayesianDistribution {
 
     @Override
     public double nextMean() {
+        double[] t = currentTable();
+        if (t != null) {
+            return BetaQuantileCache.nextDouble(t, gen);
+        }
         return bd.nextDouble();
     }
 
+    /**
+     * Samples many means, looking up the quantile table only once.
+     */
+    @Override
+    public void nextMeans(double[] out, int offset, int count) {
+        double[] t = currentTable();
+        if (t != null) {
+            for (int i = 0; i < count; i++) {
+                out[offset + i] = BetaQuantileCache.nextDouble(t, gen);
+            }
+        } else {
+            double alpha = bd.getAlpha();
+            double beta = bd.getBeta();
+            for (int i = 0; i < count; i++) {
+                out[offset + i] = bd.nextDouble(alpha, beta);
+            }
+        }
+    }
+
     @Override
     public AbstractContinousDistribution posteriorDistribution() {
         return createBernoulliDistribution(bd.getAlpha() / (bd.getAlpha() + bd.getBeta()));
@@ -86,6 +122,16 @@ public class BetaBinomialDistribution extends AbstractBayesianDistribution {
         return bd.getAlpha() + bd.getBeta();
     }
 
+    /**
+     * Returns the quantile table for the current parameters or null if there isn't one.
+     */
+    private double[] currentTable() {
+        if (quantiles != null && table == null && quantiles.isTabulated(bd.getAlpha(), bd.getBeta())) {
+            table = quantiles.table((int) bd.getAlpha(), (int) bd.getBeta());
+        }
+        return table;
+    }
+
     private AbstractContinousDistribution createBernoulliDistribution(final double p) {
         return new AbstractContinousDistribution() {
             @Override
@@ -81,7 +81,15 @@ public class BetaDistribution extends AbstractContinousDistribution {
     }
 
     public double logPdf(double x) {
-        return x * (alpha - 1) + (1 - x) * (beta - 1) - Math.log(org.apache.mahout.math.jet.stat.Gamma.beta(alpha, beta));
+        return (alpha - 1) * Math.log(x) + (beta - 1) * Math.log1p(-x) - logBeta(alpha, beta);
+    }
+
+    /**
+     * Computes \( \log B(\alpha, \beta) \) without overflowing for large parameters.
+     */
+    public static double logBeta(double alpha, double beta) {
+        return org.apache.mahout.math.jet.stat.Gamma.logGamma(alpha) + org.apache.mahout.math.jet.stat.Gamma.logGamma(beta)
+                - org.apache.mahout.math.jet.stat.Gamma.logGamma(alpha + beta);
     }
 
     @Override
@@ -89,6 +97,47 @@ public class BetaDistribution extends AbstractContinousDistribution {
         return org.apache.mahout.math.jet.stat.Gamma.incompleteBeta(alpha, beta, x);
     }
 
+    /**
+     * Inverts the cdf.  This uses Newton steps guarded by bisection so that each step either
+     * converges quickly or at least halves the interval known to contain the answer.
+     *
+     * @param p The probability whose quantile is desired.
+     * @return The value \(x\) such that \(P(X \le x) = p\).
+     */
+    public double quantile(double p) {
+        if (p <= 0) {
+            return 0;
+        } else if (p >= 1) {
+            return 1;
+        }
+
+        double low = 0;
+        double high = 1;
+        double x = mean();
+        for (int i = 0; i < 100 && high - low > 1e-15; i++) {
+            double error = cdf(x) - p;
+            if (error == 0) {
+                return x;
+            } else if (error < 0) {
+                low = x;
+            } else {
+                high = x;
+            }
+
+            double density = pdf(x);
+            double x1 = x - error / density;
+            if (density > 0 && x1 > low && x1 < high) {
+                if (Math.abs(x1 - x) < 1e-15) {
+                    return x1;
+                }
+                x = x1;
+            } else {
+                x = (low + high) / 2;
+            }
+        }
+        return x;
+    }
+
     public void setAlpha(double alpha) {
         this.alpha = alpha;
     }
@@ -0,0 +1,309 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mapr.stats.random;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Caches tabulated inverse cdf's for beta distributions with small integer parameters.
+ * <p/>
+ * Most arms in a large ranking problem have seen only a handful of votes so their posteriors
+ * are beta distributions like \(\mathrm{Beta}(1,1)\) or \(\mathrm{Beta}(2,1)\).  Many arms
+ * share the same parameters so it pays to compute the quantiles of each such distribution once
+ * and then sample by interpolating into the table at a uniformly distributed point.  This costs
+ * one uniform deviate per sample instead of the two gamma deviates that
+ * {@link BetaDistribution#nextDouble()} needs.
+ * <p/>
+ * Tables are built lazily in one sweep over the quantiles, which takes well under a millisecond,
+ * and are kept in a least-recently-used cache of bounded size.  If the cache has room for every
+ * table up to the largest shape, as the default cache does, the tables are instead kept in a
+ * grid that needs no lock to read and from which nothing is evicted.  Then a long simulation
+ * builds each table once and looking a table up is cheap enough to do for every sample.  With a
+ * smaller cache, callers are expected to hold on to the table for an arm until its parameters
+ * change so that the cache itself is only consulted when an arm is updated.
+ */
+public class BetaQuantileCache {
+    public static final int DEFAULT_MAX_SHAPE = 32;
+    public static final int DEFAULT_INTERVALS = 1024;
+    public static final int DEFAULT_MAX_TABLES = DEFAULT_MAX_SHAPE * DEFAULT_MAX_SHAPE;
+
+    // how close the cdf at each tabulated point must be to its nominal probability
+    private static final double TOLERANCE = 1e-13;
+
+    private static final BetaQuantileCache SHARED = new BetaQuantileCache(DEFAULT_MAX_SHAPE, DEFAULT_INTERVALS, DEFAULT_MAX_TABLES);
+
+    private final int maxShape;
+    private final int intervals;
+    // tables indexed by (alpha - 1) * maxShape + (beta - 1) when all of them fit
+    private final AtomicReferenceArray<double[]> grid;
+    private final AtomicReferenceArray<float[]> floatGrid;
+    // otherwise, the most recently used tables
+    private final Map<Long, double[]> tables;
+    private final Map<Long, float[]> floatTables;
+
+    /**
+     * @param maxShape  The largest value of alpha or beta that will be tabulated.
+     * @param intervals How many intervals to divide [0,1] into for each table.
+     * @param maxTables How many tables to retain before discarding the least recently used.
+     */
+    public BetaQuantileCache(int maxShape, int intervals, final int maxTables) {
+        this.maxShape = maxShape;
+        this.intervals = intervals;
+        if ((long) maxShape * maxShape <= maxTables) {
+            this.grid = new AtomicReferenceArray<double[]>(maxShape * maxShape);
+            this.floatGrid = new AtomicReferenceArray<float[]>(maxShape * maxShape);
+            this.tables = null;
+            this.floatTables = null;
+        } else {
+            this.grid = null;
+            this.floatGrid = null;
+            this.tables = lru(maxTables);
+            this.floatTables = lru(maxTables);
+        }
+    }
+
+    private static <T> Map<Long, T> lru(final int maxTables) {
+        return new LinkedHashMap<Long, T>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, T> eldest) {
+                return size() > maxTables;
+            }
+        };
+    }
+
+    /**
+     * Returns the cache that is shared by all arms of all bandits.
+     */
+    public static BetaQuantileCache getShared() {
+        return SHARED;
+    }
+
+    /**
+     * Determines whether a distribution can be sampled from a table.
+     *
+     * @param alpha The first parameter of the beta distribution.
+     * @param beta  The second parameter of the beta distribution.
+     * @return True if both parameters are integers in the range [1, maxShape].
+     */
+    public boolean isTabulated(double alpha, double beta) {
+        return alpha >= 1 && alpha <= maxShape && alpha == Math.rint(alpha)
+                && beta >= 1 && beta <= maxShape && beta == Math.rint(beta);
+    }
+
+    /**
+     * Returns the quantile table for a beta distribution, building it if necessary.
+     *
+     * @param alpha The first parameter of the beta distribution.
+     * @param beta  The second parameter of the beta distribution.
+     * @return An array with intervals+1 entries where entry i is the quantile for i / intervals.
+     */
+    public double[] table(int alpha, int beta) {
+        if (!isTabulated(alpha, beta)) {
+            throw new IllegalArgumentException(String.format("Can't tabulate beta distribution with alpha = %d, beta = %d", alpha, beta));
+        }
+        if (grid != null) {
+            int slot = (alpha - 1) * maxShape + beta - 1;
+            double[] r = grid.get(slot);
+            if (r == null) {
+                // as below, two threads may both build a table but they get identical results
+                r = buildTable(alpha, beta, intervals);
+                grid.set(slot, r);
+            }
+            return r;
+        }
+
+        Long key = ((long) alpha << 32) | beta;
+        double[] r;
+        synchronized (tables) {
+            r = tables.get(key);
+        }
+        if (r == null) {
+            // building outside the lock means that two threads may duplicate work but
+            // they will get identical results
+            r = buildTable(alpha, beta, intervals);
+            synchronized (tables) {
+                tables.put(key, r);
+            }
+        }
+        return r;
+    }
+
+    /**
+     * Returns a single precision copy of the quantile table for a beta distribution.  The copies
+     * are cached just like the tables themselves so that all single precision models share them.
+     *
+     * @see #table(int, int)
+     */
+    public float[] floatTable(int alpha, int beta) {
+        if (grid != null) {
+            int slot = (alpha - 1) * maxShape + beta - 1;
+            float[] r = floatGrid.get(slot);
+            if (r == null) {
+                r = toFloat(table(alpha, beta));
+                floatGrid.set(slot, r);
+            }
+            return r;
+        }
+
+        Long key = ((long) alpha << 32) | beta;
+        float[] r;
+        synchronized (floatTables) {
+            r = floatTables.get(key);
+        }
+        if (r == null) {
+            r = toFloat(table(alpha, beta));
+            synchronized (floatTables) {
+                floatTables.put(key, r);
+            }
+        }
+        return r;
+    }
+
+    private static float[] toFloat(double[] table) {
+        float[] r = new float[table.length];
+        for (int i = 0; i < table.length; i++) {
+            r[i] = (float) table[i];
+        }
+        return r;
+    }
+
+    public int getMaxShape() {
+        return maxShape;
+    }
+
+    /**
+     * Returns the number of tables currently cached.
+     */
+    public int size() {
+        if (grid != null) {
+            int n = 0;
+            for (int i = 0; i < grid.length(); i++) {
+                if (grid.get(i) != null) {
+                    n++;
+                }
+            }
+            return n;
+        }
+        synchronized (tables) {
+            return tables.size();
+        }
+    }
+
+    /**
+     * Samples from a tabulated distribution by linear interpolation in the inverse cdf.
+     *
+     * @param table A table as returned by {@link #table(int, int)}.
+     * @param gen   Source of uniform deviates.
+     * @return A sample from the tabulated distribution.
+     */
+    public static double nextDouble(double[] table, Random gen) {
+        double u = gen.nextDouble() * (table.length - 1);
+        int i = (int) u;
+        return table[i] + (u - i) * (table[i + 1] - table[i]);
+    }
+
+    /**
+     * Builds a table in a single sweep from the smallest quantile to the largest.  For integer
+     * parameters, the cdf of the beta distribution is the upper tail of a binomial distribution
+     * \(I_x(\alpha, \beta) = P(\mathrm{Bin}(\alpha + \beta - 1, x) \ge \alpha)\) which
+     * is a short sum.  Each quantile is found with a few Newton steps starting from the one
+     * before, with bisection as a guard.
+     */
+    static double[] buildTable(int alpha, int beta, int intervals) {
+        int n = alpha + beta - 1;
+        // coefficients for the first term of the upper and lower tails and for the density
+        double upper = binomial(n, alpha);
+        double lower = binomial(n, alpha - 1);
+        double density = n * binomial(n - 1, alpha - 1);
+
+        double[] r = new double[intervals + 1];
+        double x = 0;
+        for (int i = 1; i < intervals; i++) {
+            double p = (double) i / intervals;
+            double low = x;
+            double high = 1;
+            for (int k = 0; k < 100 && high - low > 1e-15; k++) {
+                // x^(alpha-1) (1-x)^(beta-1) is shared by the density and the cdf
+                double kernel = Math.pow(x, alpha - 1) * Math.pow(1 - x, beta - 1);
+                double error = cdf(x, kernel, alpha, n, upper, lower) - p;
+                // the cdf can't be computed much more accurately than this so going on
+                // would only chase rounding error
+                if (Math.abs(error) < TOLERANCE) {
+                    break;
+                } else if (error < 0) {
+                    low = x;
+                } else {
+                    high = x;
+                }
+
+                double f = density * kernel;
+                double x1 = x - error / f;
+                if (f > 0 && x1 > low && x1 < high) {
+                    x = x1;
+                } else {
+                    x = (low + high) / 2;
+                }
+            }
+            r[i] = x;
+        }
+        r[intervals] = 1;
+        return r;
+    }
+
+    /**
+     * Evaluates the cdf of a beta distribution with integer parameters by summing binomial
+     * probabilities.  Below the mean the upper tail is summed directly and above it the lower
+     * tail is subtracted from one.  Either way the terms shrink as the sum goes on and none
+     * underflow unless they are negligible.
+     */
+    private static double cdf(double x, double kernel, int alpha, int n, double upper, double lower) {
+        if (x <= 0) {
+            return 0;
+        } else if (x >= 1) {
+            return 1;
+        }
+        double odds = x / (1 - x);
+        double sum = 0;
+        if (x * (n + 1) <= alpha) {
+            double term = upper * kernel * x;
+            for (int j = alpha; j <= n && term > 0; j++) {
+                sum += term;
+                term *= odds * (n - j) / (j + 1);
+            }
+            return sum;
+        } else {
+            double term = lower * kernel * (1 - x);
+            for (int j = alpha - 1; j >= 0 && term > 0; j--) {
+                sum += term;
+                term *= j / (odds * (n - j + 1));
+            }
+            return 1 - sum;
+        }
+    }
+
+    private static double binomial(int n, int k) {
+        double r = 1;
+        for (int i = 1; i <= k; i++) {
+            r = r * (n - k + i) / i;
+        }
+        return r;
+    }
+}
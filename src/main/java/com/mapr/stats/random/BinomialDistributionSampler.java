@@ -22,17 +22,24 @@ import org.apache.mahout.math.jet.random.AbstractContinousDistribution;
 import java.util.Random;
 
 public class BinomialDistributionSampler extends DistributionGenerator {
-    private final BetaDistribution bd;
+    private final double alpha;
+    private final double beta;
     private final Random gen;
 
     public BinomialDistributionSampler(double alpha, double beta, Random gen) {
+        this.alpha = alpha;
+        this.beta = beta;
         this.gen = gen;
-        bd = new BetaDistribution(alpha, beta);
     }
 
     @Override
     public DistributionWithMean nextDistribution() {
-        final double p = bd.nextDouble();
+        return nextDistribution(gen);
+    }
+
+    @Override
+    public DistributionWithMean nextDistribution(final Random gen) {
+        final double p = new BetaDistribution(alpha, beta, gen).nextDouble();
         return new DistributionWithMean(new AbstractContinousDistribution() {
             @Override
             public double nextDouble() {
@@ -17,9 +17,26 @@
 
 package com.mapr.stats.random;
 
+import java.util.Random;
+
 /**
  * Generate a reference distribution for testing.
  */
 public abstract class DistributionGenerator {
     public abstract DistributionWithMean nextDistribution();
+
+    /**
+     * Generates a reference distribution using a particular source of randomness both to pick the
+     * distribution and to sample from it.  This allows simulations to be reproducible even when
+     * many run at once.
+     * <p/>
+     * The default ignores the generator and calls {@link #nextDistribution()}, so generators that
+     * don't override this still work but simulations that use them aren't reproducible.
+     *
+     * @param gen The source of randomness.
+     * @return A new distribution.
+     */
+    public DistributionWithMean nextDistribution(Random gen) {
+        return nextDistribution();
+    }
 }
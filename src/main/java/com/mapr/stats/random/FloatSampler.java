@@ -0,0 +1,145 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mapr.stats.random;
+
+import java.util.Random;
+
+/**
+ * Single precision samplers for the posteriors used by the bandits.
+ * <p/>
+ * Sampling a posterior mean only has to be good enough to order arms, so 24 bits of mantissa
+ * are plenty.  Uniform deviates come from {@link Random#nextFloat()} which uses only one call to
+ * the underlying generator instead of the two used by {@link Random#nextDouble()}.  Normal
+ * deviates use the polar method and keep the second value of each pair for the next call.
+ * Gamma deviates use the method of Marsaglia and Tsang which needs one normal and one uniform
+ * deviate nearly all of the time.  Beta and t deviates are built from these in the usual way.
+ * Logarithms, roots and powers still go through {@link Math} in double precision and each
+ * deviate is computed one at a time.
+ * <p/>
+ * A sampler keeps state between calls and so is not thread-safe.
+ */
+public class FloatSampler {
+    private final Random gen;
+
+    private boolean haveSpare = false;
+    private float spare;
+
+    public FloatSampler(Random gen) {
+        this.gen = gen;
+    }
+
+    public float nextFloat() {
+        return gen.nextFloat();
+    }
+
+    /**
+     * Returns a standard normal deviate.
+     */
+    public float nextGaussian() {
+        if (haveSpare) {
+            haveSpare = false;
+            return spare;
+        }
+        float u, v, w;
+        do {
+            u = 2 * gen.nextFloat() - 1;
+            v = 2 * gen.nextFloat() - 1;
+            w = u * u + v * v;
+        } while (w >= 1 || w == 0);
+        float scale = (float) Math.sqrt(-2 * Math.log(w) / w);
+        spare = v * scale;
+        haveSpare = true;
+        return u * scale;
+    }
+
+    /**
+     * Returns a deviate from the gamma distribution with unit scale.
+     *
+     * @param shape The shape parameter, which must be positive.
+     */
+    public float nextGamma(float shape) {
+        if (shape < 1) {
+            // boost the shape and then correct with a uniform deviate
+            float u;
+            do {
+                u = gen.nextFloat();
+            } while (u == 0);
+            return nextGamma(shape + 1) * (float) Math.exp(Math.log(u) / shape);
+        }
+        float d = shape - 1.0f / 3;
+        float c = (float) (1 / Math.sqrt(9 * d));
+        while (true) {
+            float x;
+            float v;
+            do {
+                x = nextGaussian();
+                v = 1 + c * x;
+            } while (v <= 0);
+            v = v * v * v;
+            float u = gen.nextFloat();
+            float x2 = x * x;
+            if (u < 1 - 0.0331f * x2 * x2) {
+                return d * v;
+            }
+            if (u > 0 && Math.log(u) < 0.5 * x2 + d * (1 - v + Math.log(v))) {
+                return d * v;
+            }
+        }
+    }
+
+    /**
+     * Returns a deviate from the beta distribution.
+     */
+    public float nextBeta(float alpha, float beta) {
+        float x = nextGamma(alpha);
+        float y = nextGamma(beta);
+        float sum = x + y;
+        if (sum == 0) {
+            // both underflowed, which can only happen with tiny shapes
+            return gen.nextFloat() * (alpha + beta) < alpha ? 1 : 0;
+        }
+        return x / sum;
+    }
+
+    /**
+     * Samples from a tabulated distribution by linear interpolation in the inverse cdf.  This is
+     * the single precision version of {@link BetaQuantileCache#nextDouble(double[], Random)}.
+     *
+     * @param table The quantiles of the distribution at evenly spaced probabilities.
+     */
+    public float nextTabulated(float[] table) {
+        float u = gen.nextFloat() * (table.length - 1);
+        int i = (int) u;
+        return table[i] + (u - i) * (table[i + 1] - table[i]);
+    }
+
+    /**
+     * Returns a deviate from the t distribution using Bailey's polar method.
+     *
+     * @param df The degrees of freedom.
+     */
+    public float nextT(float df) {
+        float u, w;
+        do {
+            u = 2 * gen.nextFloat() - 1;
+            float v = 2 * gen.nextFloat() - 1;
+            w = u * u + v * v;
+        } while (w >= 1 || w == 0);
+        return u * (float) Math.sqrt(df * (Math.pow(w, -2 / df) - 1) / w);
+    }
+}
@@ -17,7 +17,6 @@
 
 package com.mapr.stats.random;
 
-import org.apache.mahout.common.RandomUtils;
 import org.apache.mahout.math.jet.random.AbstractContinousDistribution;
 import org.apache.mahout.math.jet.random.Gamma;
 import org.apache.mahout.math.jet.random.Normal;
@@ -39,19 +38,34 @@ import java.util.Random;
  * \]
  * In this form, \(n\) is the number of samples seen so far and \(s\) is the total squared
  * deviation from the empirical mean.
+ * <p/>
+ * Integrating out the variance shows that the marginal distribution of the mean is a scaled
+ * Student t distribution with \(n\) degrees of freedom,
+ * \[
+ * \mu = m + \sqrt{\frac s {n^2}} \, t_n
+ * \]
+ * so {@link #nextMean()} samples that directly using Bailey's polar method.  The scale and the
+ * exponent that the method needs only change when a sample is added, so they are cached.
  */
 public class GammaNormalDistribution extends AbstractBayesianDistribution {
-    private Random gen = RandomUtils.getRandom();
+    private final Random gen;
     private double m, n;
     private double ss;
-    private final Gamma gd = new Gamma(1, 1, gen);
-    private final Normal nd = new Normal(0, 1, gen);
+    private final Gamma gd;
+    private final Normal nd;
+
+    // cached for sampling the mean, see updateT
+    private double tScale;
+    private double tExponent;
 
     public GammaNormalDistribution(double m, double n, double sd, Random gen) {
         this.gen = gen;
+        this.gd = new Gamma(1, 1, gen);
+        this.nd = new Normal(0, 1, gen);
         this.m = m;
         this.n = n;
         this.ss = sd * sd;
+        updateT();
     }
 
     /**
@@ -77,10 +91,52 @@ public class GammaNormalDistribution extends AbstractBayesianDistribution {
         final double delta = (x - m);
         m += delta / n;
         ss = ss + delta * (x - m);
+        updateT();
     }
 
+    /**
+     * Samples the mean from its marginal t distribution.  Bailey's polar method picks a point
+     * \((u, v)\) uniformly in the unit disc and returns
+     * \[
+     * t = u \sqrt{\frac {n (w^{-2/n} - 1)} w}
+     * \]
+     * where \(w = u^2 + v^2\).  Scaling by \(\sqrt{s} / n\) cancels the \(n\) under the root.
+     */
     @Override
     public double nextMean() {
+        double u, w;
+        do {
+            u = 2 * gen.nextDouble() - 1;
+            double v = 2 * gen.nextDouble() - 1;
+            w = u * u + v * v;
+        } while (w >= 1 || w == 0);
+        return m + tScale * u * Math.sqrt((Math.pow(w, tExponent) - 1) / w);
+    }
+
+    /**
+     * Samples many means with the t parameters held in locals.
+     */
+    @Override
+    public void nextMeans(double[] out, int offset, int count) {
+        double mean = m;
+        double scale = tScale;
+        double exponent = tExponent;
+        for (int i = 0; i < count; i++) {
+            double u, w;
+            do {
+                u = 2 * gen.nextDouble() - 1;
+                double v = 2 * gen.nextDouble() - 1;
+                w = u * u + v * v;
+            } while (w >= 1 || w == 0);
+            out[offset + i] = mean + scale * u * Math.sqrt((Math.pow(w, exponent) - 1) / w);
+        }
+    }
+
+    /**
+     * Samples the mean by first sampling the variance and then sampling the mean given the
+     * variance.  This has the same distribution as {@link #nextMean()} but is considerably slower.
+     */
+    double nextMeanTwoStage() {
         double sd = Math.sqrt(nextVariance() / n);
         return nd.nextDouble() * sd + m;
     }
@@ -107,4 +163,9 @@ public class GammaNormalDistribution extends AbstractBayesianDistribution {
     private double nextVariance() {
         return 1 / gd.nextDouble(n / 2, ss / 2);
     }
+
+    private void updateT() {
+        tScale = Math.sqrt(ss / n);
+        tExponent = -2 / n;
+    }
 }
@@ -36,6 +36,11 @@ public class NormalDistributionSampler extends DistributionGenerator {
 
     @Override
     public DistributionWithMean nextDistribution() {
+        return nextDistribution(gen);
+    }
+
+    @Override
+    public DistributionWithMean nextDistribution(Random gen) {
         double mean = gen.nextDouble();
         return new DistributionWithMean(new Normal(mean, sd, gen), mean);
     }
@@ -0,0 +1,68 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mapr.bandit;
+
+import com.mapr.stats.bandit.BetaBayesFactory;
+import com.mapr.stats.bandit.FloatBetaBayesFactory;
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BanditRankingTest {
+    @Test
+    public void testReproducible() throws InterruptedException {
+        BanditRanking.Simulation a = BanditRanking.simulate(new BetaBayesFactory(), 5, 10, 100, 12, 200, 17, 1);
+        BanditRanking.Simulation b = BanditRanking.simulate(new BetaBayesFactory(), 5, 10, 100, 12, 200, 17, 4);
+        assertArrayEquals(a.precision, b.precision, 0);
+        assertArrayEquals(a.regret, b.regret, 0);
+        assertEquals(10, a.samples.size());
+        for (int m = 0; m < a.samples.size(); m++) {
+            assertArrayEquals(a.samples.get(m), b.samples.get(m), 0);
+        }
+
+        // each round shows 10 items in each instance, on top of a prior of 2 per item
+        double total = 0;
+        for (double count : a.samples.get(0)) {
+            total += count;
+        }
+        assertEquals(200 * 10 + 2 * 100, total, 1e-9);
+
+        // the ranking should learn
+        assertTrue(a.precision[199] > a.precision[0]);
+        assertTrue(a.regret[199] < a.regret[0]);
+    }
+
+    @Test
+    public void testFloatPrecision() throws InterruptedException {
+        // single precision sampling should rank as well as double precision
+        BanditRanking.Simulation full = BanditRanking.simulate(new BetaBayesFactory(), 5, 10, 100, 40, 400, 17, 2);
+        BanditRanking.Simulation single = BanditRanking.simulate(new FloatBetaBayesFactory(), 5, 10, 100, 40, 400, 17, 2);
+        assertEquals(mean(full.precision, 300, 400), mean(single.precision, 300, 400), 0.03);
+        assertEquals(mean(full.regret, 300, 400), mean(single.regret, 300, 400), 0.05);
+    }
+
+    private static double mean(double[] x, int start, int end) {
+        double sum = 0;
+        for (int i = start; i < end; i++) {
+            sum += x[i];
+        }
+        return sum / (end - start);
+    }
+}
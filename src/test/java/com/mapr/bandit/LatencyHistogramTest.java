@@ -0,0 +1,64 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mapr.bandit;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LatencyHistogramTest {
+    @Test
+    public void testBuckets() {
+        long previous = -1;
+        for (int i = 0; i < 3700; i++) {
+            assertEquals(previous + 1, LatencyHistogram.low(i));
+            assertTrue(LatencyHistogram.high(i) >= LatencyHistogram.low(i));
+            assertEquals(i, LatencyHistogram.bucket(LatencyHistogram.low(i)));
+            assertEquals(i, LatencyHistogram.bucket(LatencyHistogram.high(i)));
+            previous = LatencyHistogram.high(i);
+        }
+        assertTrue(LatencyHistogram.bucket(Long.MAX_VALUE) < 3776);
+    }
+
+    @Test
+    public void testPercentiles() {
+        Random gen = new Random(5);
+        LatencyHistogram a = new LatencyHistogram();
+        LatencyHistogram b = new LatencyHistogram();
+        long[] x = new long[100000];
+        for (int i = 0; i < x.length; i++) {
+            // log-normal latencies around 20 microseconds
+            x[i] = (long) (20000 * Math.exp(gen.nextGaussian()));
+            (i % 2 == 0 ? a : b).record(x[i]);
+        }
+        a.merge(b);
+        Arrays.sort(x);
+
+        assertEquals(x.length, a.count());
+        assertEquals(x[0], a.min());
+        assertEquals(x[x.length - 1], a.max());
+        for (double q : new double[]{0.1, 0.5, 0.9, 0.99, 0.999}) {
+            double expected = x[(int) Math.ceil(q * x.length) - 1];
+            assertEquals(expected, a.percentile(q), expected / 64);
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mapr.bandit;
+
+import com.mapr.stats.bandit.BetaBayesFactory;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LoadGeneratorTest {
+    @Test
+    public void testZipf() {
+        LoadGenerator.ZipfSampler uniform = new LoadGenerator.ZipfSampler(10, 0);
+        LoadGenerator.ZipfSampler skewed = new LoadGenerator.ZipfSampler(10, 1);
+        Random gen = new Random(1);
+        int[] u = new int[10];
+        int[] s = new int[10];
+        int n = 100000;
+        for (int i = 0; i < n; i++) {
+            u[uniform.sample(gen)]++;
+            s[skewed.sample(gen)]++;
+        }
+
+        // harmonic number H_10
+        double h = 0;
+        for (int i = 1; i <= 10; i++) {
+            h += 1.0 / i;
+        }
+        for (int i = 0; i < 10; i++) {
+            assertEquals(0.1, (double) u[i] / n, 0.01);
+            assertEquals(1.0 / (i + 1) / h, (double) s[i] / n, 0.01);
+        }
+    }
+
+    @Test
+    public void testRun() throws InterruptedException {
+        LoadGenerator load = new LoadGenerator(new BetaBayesFactory(), 50, 1);
+        load.setReaders(2);
+        load.setWriters(2);
+        load.setRate(500);
+        load.setDuration(1000);
+        load.setReportInterval(250);
+        LoadGenerator.Report report = load.run(null);
+
+        assertEquals(4, report.getIntervals().size());
+        LoadGenerator.Interval total = report.getTotal();
+        assertEquals(0, total.getErrors());
+        assertTrue(total.getRankLatency().count() > 20);
+        assertTrue(total.getTrainLatency().count() > 20);
+        assertEquals(total.getRankLatency().count(), total.getRankService().count());
+
+        // nobody should run much faster than the requested rate
+        assertTrue(total.getTrainLatency().count() <= 2 * 500 * 1.0 + 10);
+
+        // measuring from the intended start can only make latency look worse
+        for (double q : new double[]{0.5, 0.99, 0.999}) {
+            assertTrue(total.getRankLatency().percentile(q) >= total.getRankService().percentile(q));
+            assertTrue(total.getRankLatency().percentile(q) <= total.getRankLatency().percentile(Math.min(1, q + 0.005)));
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mapr.bandit;
+
+import com.mapr.stats.bandit.BetaBayesModel;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TraceReplayTest {
+    @Test
+    public void testReadWrite() throws IOException {
+        File f = File.createTempFile("trace", ".bin");
+        try {
+            Random gen = new Random(1);
+            writeTrace(f, gen, 2000, 50, 0.3);
+
+            // a small window forces records to be remapped
+            gen = new Random(1);
+            TraceRecord r = new TraceRecord();
+            try (TraceReader in = new TraceReader(f, 1000)) {
+                assertEquals(50, in.getNumArms());
+                for (int i = 0; i < 2000; i++) {
+                    assertTrue(in.next(r));
+                    int n = 1 + gen.nextInt(8);
+                    assertEquals(1000L * i, r.getTimestamp());
+                    assertEquals(i % 3, r.getThread());
+                    assertEquals(n, r.getLength());
+                    for (int j = 0; j < n; j++) {
+                        assertEquals(gen.nextInt(50), r.getArms()[j]);
+                        assertEquals(gen.nextDouble() < 0.3 ? 1 : 0, r.getFeedback()[j]);
+                    }
+                }
+                assertTrue(!in.next(r));
+            }
+        } finally {
+            f.delete();
+        }
+    }
+
+    @Test
+    public void testCorrupt() throws IOException {
+        File f = File.createTempFile("trace", ".bin");
+        try {
+            try (FileOutputStream out = new FileOutputStream(f)) {
+                out.write(new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12});
+            }
+            try {
+                new TraceReader(f).close();
+                fail("Should have rejected file without magic number");
+            } catch (IOException e) {
+                assertTrue(e.getMessage().startsWith("Not a trace file"));
+            }
+
+            // truncate a good file in the middle of a record
+            writeTrace(f, new Random(2), 10, 5, 0.5);
+            try (FileOutputStream out = new FileOutputStream(f, true)) {
+                out.write(new byte[]{0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 9, 0, 0});
+            }
+            try (TraceReader in = new TraceReader(f)) {
+                TraceRecord r = new TraceRecord();
+                for (int i = 0; i < 10; i++) {
+                    assertTrue(in.next(r));
+                }
+                in.next(r);
+                fail("Should have found truncated record");
+            } catch (IOException e) {
+                assertTrue(e.getMessage().startsWith("Bad page length"));
+            }
+        } finally {
+            f.delete();
+        }
+    }
+
+    @Test
+    public void testReplay() throws IOException {
+        File f = File.createTempFile("trace", ".bin");
+        try {
+            // a log of random pages where item i is clicked with probability i / 20
+            Random gen = new Random(3);
+            try (TraceWriter out = new TraceWriter(f, 20)) {
+                int[] arms = new int[5];
+                byte[] feedback = new byte[5];
+                for (int i = 0; i < 5000; i++) {
+                    for (int j = 0; j < 5; j++) {
+                        arms[j] = gen.nextInt(20);
+                        feedback[j] = (byte) (gen.nextDouble() < arms[j] / 20.0 ? 1 : 0);
+                    }
+                    out.write(i * 1000000L, 0, 5, arms, feedback);
+                }
+            }
+
+            TraceReplay.Report r;
+            try (TraceReader in = new TraceReader(f)) {
+                r = TraceReplay.replay(in, new BetaBayesModel(20, new Random(4)));
+            }
+            assertEquals(5000, r.getEvents());
+            assertEquals(25000, r.getImpressions());
+            assertEquals(5000, r.getRankLatency().count());
+            assertEquals(25000, r.getTrainLatency().count());
+            assertEquals(0.475, r.getLoggedClickRate(), 0.02);
+            // the bandit learns to favor items that get more clicks than the logging policy did
+            assertTrue(r.getClickCoverage() > r.getOverlap());
+            assertTrue(r.getReplayMatches() > 0);
+            assertTrue(r.getReplayClickRate() > 0.7);
+            assertTrue(r.getSpeedup() > 0);
+        } finally {
+            f.delete();
+        }
+    }
+
+    private static void writeTrace(File f, Random gen, int records, int numArms, double clickRate) throws IOException {
+        try (TraceWriter out = new TraceWriter(f, numArms)) {
+            int[] arms = new int[8];
+            byte[] feedback = new byte[8];
+            for (int i = 0; i < records; i++) {
+                int n = 1 + gen.nextInt(8);
+                for (int j = 0; j < n; j++) {
+                    arms[j] = gen.nextInt(numArms);
+                    feedback[j] = (byte) (gen.nextDouble() < clickRate ? 1 : 0);
+                }
+                out.write(1000L * i, i % 3, n, arms, feedback);
+            }
+        }
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mapr.stats;
+
+import com.mapr.stats.random.BetaDistribution;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BetaWalkArrayTest {
+    @Test
+    public void testStationary() {
+        for (double[] shape : new double[][]{{1, 1}, {2, 5}, {0.8, 30}}) {
+            BetaWalkArray walk = new BetaWalkArray(20000, shape[0], shape[1], 0.05, new Random(1));
+            double[] start = walk.getProbabilities().clone();
+            walk.step(200);
+
+            // the walks should have moved a fair bit
+            double moved = 0;
+            for (int i = 0; i < start.length; i++) {
+                moved += Math.abs(walk.get(i) - start[i]);
+            }
+            assertTrue(moved / start.length > 0.01);
+
+            // but the distribution of positions should still be beta
+            double[] x = walk.getProbabilities().clone();
+            Arrays.sort(x);
+            BetaDistribution bd = new BetaDistribution(shape[0], shape[1]);
+            for (double q : new double[]{0.1, 0.25, 0.5, 0.75, 0.9}) {
+                assertEquals(q, bd.cdf(x[(int) (q * x.length)]), 0.02);
+            }
+
+            assertEquals(x[x.length - 1], walk.getMax(), 0);
+            assertEquals(walk.getMax(), walk.get(walk.getBest()), 0);
+            int i = walk.getBest();
+            assertEquals(bd.logPdf(walk.get(i)), walk.logPdf(i), 1e-9);
+        }
+    }
+
+    @Test
+    public void testReproducible() {
+        BetaWalkArray a = new BetaWalkArray(100, 2, 3, 0.1, new Random(3));
+        BetaWalkArray b = new BetaWalkArray(100, 2, 3, 0.1, new Random(3));
+        a.step(50);
+        b.step(50);
+        assertArrayEquals(a.getProbabilities(), b.getProbabilities(), 0);
+    }
+}
@@ -17,11 +17,28 @@
 
 package com.mapr.stats.bandit;
 
+import com.google.common.base.Charsets;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+import com.google.common.io.Files;
+import com.mapr.stats.random.AbstractBayesianDistribution;
+import com.mapr.stats.random.BetaQuantileCache;
+import com.mapr.stats.random.BinomialDistributionSampler;
+import com.mapr.stats.random.DistributionGenerator;
+import com.mapr.stats.random.DistributionWithMean;
+import com.mapr.stats.random.NormalDistributionSampler;
 import org.junit.Test;
 
+import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 public class BayesBanditTest {
     @Test
@@ -31,8 +48,239 @@ public class BayesBanditTest {
     }
 
     @Test
-    public void testSlowConvergence() throws FileNotFoundException {
-        double r = BanditTrainer.commitTime("commit.tsv", 2000, 0.1, 0.12, 1000);
-        assertEquals(.78, r, 0.03);
+    public void testSlowConvergence() throws IOException {
+        File dir = Files.createTempDir();
+        try {
+            double r = BanditTrainer.commitTime(new File(dir, "commit.tsv").getPath(), 2000, 0.1, 0.12, 1000);
+            assertEquals(.78, r, 0.03);
+        } finally {
+            for (File f : dir.listFiles()) {
+                f.delete();
+            }
+            dir.delete();
+        }
+    }
+
+    @Test
+    public void testReproducibleRegret() throws IOException {
+        File dir = Files.createTempDir();
+        try {
+            String[] tables = new String[2];
+            double[] median = new double[2];
+            int[] threads = {1, 4};
+            for (int i = 0; i < 2; i++) {
+                File cumulative = new File(dir, "cumulative-" + i + ".tsv");
+                File local = new File(dir, "local-" + i + ".tsv");
+                ForkJoinPool pool = new ForkJoinPool(threads[i]);
+                median[i] = BanditTrainer.totalRegret(cumulative.getPath(), local.getPath(), 37, 5, 500,
+                        new BetaBayesFactory(), new BinomialDistributionSampler(1, 1, new Random()), 31, pool);
+                pool.shutdown();
+                tables[i] = Files.toString(cumulative, Charsets.UTF_8) + Files.toString(local, Charsets.UTF_8);
+            }
+            assertEquals(tables[0], tables[1]);
+            assertEquals(median[0], median[1], 0);
+
+            // seeded results are pinned so that anything that changes the order in which a
+            // replication draws random numbers shows up here rather than silently in old results
+            assertEquals(12.881727500228573, median[0], 0);
+            ForkJoinPool pool = new ForkJoinPool(2);
+            assertEquals(19.43383677058741, BanditTrainer.driftingRegret(new File(dir, "drift.tsv").getPath(),
+                    new File(dir, "drift-local.tsv").getPath(), 37, 5, 500, new BetaBayesFactory(), 1, 3, 0.01, 31, pool), 0);
+            pool.shutdown();
+        } finally {
+            for (File f : dir.listFiles()) {
+                f.delete();
+            }
+            dir.delete();
+        }
+    }
+
+    @Test
+    public void testLegacyGenerator() throws IOException {
+        // generators written before nextDistribution(Random) existed still work
+        final BinomialDistributionSampler arms = new BinomialDistributionSampler(1, 1, new Random(5));
+        DistributionGenerator legacy = new DistributionGenerator() {
+            @Override
+            public DistributionWithMean nextDistribution() {
+                return arms.nextDistribution();
+            }
+        };
+        File dir = Files.createTempDir();
+        try {
+            ForkJoinPool pool = new ForkJoinPool(2);
+            double median = BanditTrainer.totalRegret(new File(dir, "cumulative.tsv").getPath(),
+                    new File(dir, "local.tsv").getPath(), 8, 3, 100, new BetaBayesFactory(), legacy, 11, pool);
+            pool.shutdown();
+            assertTrue(median >= 0);
+        } finally {
+            for (File f : dir.listFiles()) {
+                f.delete();
+            }
+            dir.delete();
+        }
+    }
+
+    @Test
+    public void testAdaptiveRegret() throws IOException {
+        File dir = Files.createTempDir();
+        try {
+            String cumulative = new File(dir, "cumulative.tsv").getPath();
+            String local = new File(dir, "local.tsv").getPath();
+            ForkJoinPool pool = new ForkJoinPool(2);
+
+            // with no target, all replications are run and match a fixed size run
+            double median = BanditTrainer.totalRegret(cumulative, local, 40, 5, 300,
+                    new BetaBayesFactory(), new BinomialDistributionSampler(1, 1, new Random()), 17, pool);
+            RegretEstimate all = BanditTrainer.adaptiveRegret(cumulative, local, 5, 300,
+                    new BetaBayesFactory(), new BinomialDistributionSampler(1, 1, new Random()), 0, 10, 40, 17, pool);
+            assertEquals(40, all.getReplications());
+            assertEquals(median, all.getMedian(), 0);
+            assertFalse(all.isConverged());
+
+            // a loose target stops early with the precision that was asked for
+            RegretEstimate loose = BanditTrainer.adaptiveRegret(cumulative, local, 5, 300,
+                    new BetaBayesFactory(), new BinomialDistributionSampler(1, 1, new Random()), 2 * all.getHalfWidth(), 10, 40, 17, pool);
+            assertTrue(loose.isConverged());
+            assertTrue(loose.getReplications() < 40);
+            assertTrue(loose.getHalfWidth() <= 2 * all.getHalfWidth());
+            pool.shutdown();
+        } finally {
+            for (File f : dir.listFiles()) {
+                f.delete();
+            }
+            dir.delete();
+        }
+    }
+
+    @Test
+    public void testPairedRegret() {
+        ForkJoinPool pool = new ForkJoinPool(2);
+        BinomialDistributionSampler arms = new BinomialDistributionSampler(1, 1, new Random());
+
+        // identical solvers facing identical arms have identical regret
+        RegretEstimate same = BanditTrainer.pairedRegret(5, 200, new BetaBayesFactory(), new BetaBayesFactory(), arms,
+                0.01, 20, 200, 3, pool);
+        assertEquals(20, same.getReplications());
+        assertEquals(0, same.getMean(), 0);
+        assertEquals(0, same.getHalfWidth(), 0);
+
+        // Thompson sampling should beat uniform random choice by a wide margin
+        RegretEstimate diff = BanditTrainer.pairedRegret(5, 500, new EpsilonGreedyFactory(1), new BetaBayesFactory(), arms,
+                10, 20, 400, 3, pool);
+        assertTrue(diff.isConverged());
+        assertTrue(diff.getMean() - diff.getHalfWidth() > 0);
+        pool.shutdown();
+    }
+
+    @Test
+    public void testFloatRegret() {
+        ForkJoinPool pool = new ForkJoinPool(2);
+        BinomialDistributionSampler arms = new BinomialDistributionSampler(1, 1, new Random());
+
+        // single precision sampling should make no measurable difference to regret so the
+        // confidence interval for the paired difference should cover zero
+        RegretEstimate beta = BanditTrainer.pairedRegret(20, 500, new FloatBetaBayesFactory(), new BetaBayesFactory(), arms,
+                1, 50, 1000, 7, pool);
+        assertTrue(beta.isConverged());
+        assertTrue(beta.toString(), Math.abs(beta.getMean()) <= beta.getHalfWidth());
+
+        NormalDistributionSampler normal = new NormalDistributionSampler(1, new Random());
+        RegretEstimate gamma = BanditTrainer.pairedRegret(20, 500, new FloatGammaNormalBayesFactory(),
+                new GammaNormalBayesFactory(), normal, 1.5, 50, 1500, 7, pool);
+        assertTrue(gamma.isConverged());
+        assertTrue(gamma.toString(), Math.abs(gamma.getMean()) <= gamma.getHalfWidth());
+        pool.shutdown();
+    }
+
+    @Test
+    public void testFloatSaturation() {
+        // a head arm with a 1% rate gets well past the point where float counts stop changing
+        FloatBetaBayesModel beta = new FloatBetaBayesModel(2, new Random(1));
+        for (int i = 0; i < 40000000; i++) {
+            beta.train(0, i % 100 == 0 ? 1 : 0);
+        }
+        assertEquals(0.01, beta.getMean(0), 1e-5);
+        AbstractBayesianDistribution arm = beta.iterator().next();
+        assertTrue(arm.getSamples() < 2 * FloatBetaBayesModel.MAX_COUNT);
+        assertTrue(arm.getSamples() > FloatBetaBayesModel.MAX_COUNT / 2);
+        assertEquals(0.01, arm.nextMean(), 1e-3);
+
+        FloatGammaNormalBayesModel normal = new FloatGammaNormalBayesModel(2, new Random(2));
+        for (int i = 0; i < 10000000; i++) {
+            normal.train(0, i % 2 == 0 ? 0.5 : 1.5);
+        }
+        assertEquals(1, normal.getMean(0), 1e-3);
+        arm = normal.iterator().next();
+        assertTrue(arm.getSamples() < FloatGammaNormalBayesModel.MAX_COUNT);
+        // the variance of the rewards is 0.25 so samples of the mean are tightly clustered
+        for (int i = 0; i < 100; i++) {
+            assertEquals(1, arm.nextMean(), 0.01);
+        }
+        assertEquals(1, arm.nextDouble(), 3);
+    }
+
+    @Test
+    public void testRankWithTies() {
+        // fresh arms are sampled from a small table so many samples collide
+        for (BayesianBandit bandit : new BayesianBandit[]{new BetaBayesModel(2000, new Random(1)),
+                new CompactBetaBayesModel(2000, new Random(1)), new FloatBetaBayesModel(2000, new Random(1))}) {
+            List<Integer> page = bandit.rank(1000);
+            assertEquals(1000, page.size());
+            assertEquals(1000, Sets.newHashSet(page).size());
+            assertEquals(2000, bandit.rank(5000).size());
+        }
+    }
+
+    @Test
+    public void testSampleAll() {
+        Random gen = new Random(5);
+        List<BayesianBandit> bandits = Lists.newArrayList(new BetaBayesModel(10, gen), new CompactBetaBayesModel(10, gen),
+                new GammaNormalBayesFactory().createBandit(10, gen), new FloatBetaBayesModel(10, gen),
+                new FloatGammaNormalBayesModel(10, gen), new EpsilonGreedy(10, 0.1, gen), new Ucb1Bandit(10));
+        for (BayesianBandit bandit : bandits) {
+            for (int i = 0; i < 1000; i++) {
+                int k = i % 10;
+                bandit.train(k, gen.nextDouble() < 0.05 * k ? 1 : 0);
+            }
+            assertEquals(10, bandit.size());
+
+            // the arm with the best score should be the same as what sample picks
+            int[] picks = new int[10];
+            int[] best = new int[10];
+            double[] scores = new double[10];
+            for (int i = 0; i < 5000; i++) {
+                picks[bandit.sample()]++;
+                bandit.sampleAll(scores);
+                int max = 0;
+                for (int j = 1; j < 10; j++) {
+                    if (scores[j] > scores[max]) {
+                        max = j;
+                    }
+                }
+                best[max]++;
+            }
+            for (int j = 0; j < 10; j++) {
+                assertEquals(bandit.getClass().getSimpleName(), picks[j], best[j], 150);
+            }
+        }
+    }
+
+    @Test
+    public void testTableSpeed() throws IOException {
+        // quantile tables only pay if they beat direct sampling on a real simulation,
+        // building the tables included
+        ForkJoinPool pool = new ForkJoinPool(1);
+        BetaBayesFactory[] factories = {new BetaBayesFactory(), new BetaBayesFactory(new BetaQuantileCache(32, 1024, 1024))};
+        long[] best = {Long.MAX_VALUE, Long.MAX_VALUE};
+        for (int round = 0; round < 3; round++) {
+            for (int k = 0; k < 2; k++) {
+                long t0 = System.nanoTime();
+                BanditTrainer.totalRegret("/dev/null", "/dev/null", 50, 20, 1000, factories[k],
+                        new BinomialDistributionSampler(1, 1, new Random()), 3, pool);
+                best[k] = Math.min(best[k], System.nanoTime() - t0);
+            }
+        }
+        pool.shutdown();
+        assertTrue(String.format("direct %.1f ms, tables %.1f ms", best[0] * 1e-6, best[1] * 1e-6), best[1] < best[0]);
     }
 }
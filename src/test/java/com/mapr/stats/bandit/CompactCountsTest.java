@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mapr.stats.bandit;
+
+import com.mapr.stats.random.AbstractBayesianDistribution;
+import org.apache.mahout.common.RandomUtils;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CompactCountsTest {
+    @Test
+    public void testCounting() {
+        CompactCounts counts = new CompactCounts(3);
+        for (int i = 0; i < 10; i++) {
+            counts.increment(0, true);
+        }
+        for (int i = 0; i < 7; i++) {
+            counts.increment(0, false);
+        }
+        counts.increment(2, false);
+
+        assertEquals(10, counts.successes(0));
+        assertEquals(7, counts.failures(0));
+        assertEquals(0, counts.successes(1));
+        assertEquals(0, counts.failures(1));
+        assertEquals(0, counts.successes(2));
+        assertEquals(1, counts.failures(2));
+        assertEquals(0, counts.spilled());
+    }
+
+    @Test
+    public void testSpill() {
+        CompactCounts counts = new CompactCounts(3);
+        for (int i = 0; i < 100000; i++) {
+            counts.increment(1, true);
+            if (i % 3 == 0) {
+                counts.increment(1, false);
+            }
+            counts.increment(2, false);
+        }
+        counts.increment(0, true);
+
+        assertEquals(2, counts.spilled());
+        assertEquals(100000, counts.successes(1));
+        assertEquals(33334, counts.failures(1));
+        assertEquals(0, counts.successes(2));
+        assertEquals(100000, counts.failures(2));
+        assertEquals(1, counts.successes(0));
+        assertEquals(0, counts.failures(0));
+    }
+
+    @Test
+    public void testModel() {
+        CompactBetaBayesModel model = new CompactBetaBayesModel(100, RandomUtils.getRandom());
+        for (int i = 0; i < 200; i++) {
+            model.train(7, 1);
+            model.train(3, i % 2);
+        }
+        assertEquals(201.0 / 202, model.getMean(7), 1e-10);
+        assertEquals(0.5, model.getMean(3), 1e-10);
+        assertEquals(0.5, model.getMean(50), 1e-10);
+
+        List<Integer> r = model.rank(10);
+        assertEquals(10, r.size());
+        assertTrue(r.contains(7));
+
+        int i = 0;
+        for (AbstractBayesianDistribution arm : model) {
+            assertEquals(i == 7 || i == 3 ? 202 : 2, arm.getSamples(), 0);
+            i++;
+        }
+        assertEquals(100, i);
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mapr.stats.bandit;
+
+import com.google.common.collect.Lists;
+import org.apache.mahout.math.DenseMatrix;
+import org.apache.mahout.math.Matrix;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class ConcurrentContextualBayesBanditTest {
+    @Test
+    public void testTotalsArePreserved() throws Exception {
+        final int arms = 50;
+        final int features = 8;
+        Random rand = new Random(1);
+        Matrix recipes = new DenseMatrix(arms, features);
+        for (int i = 0; i < arms; i++) {
+            for (int j = 0; j < features; j++) {
+                if (rand.nextDouble() < 0.5) {
+                    recipes.set(i, j, 1);
+                }
+            }
+        }
+
+        final ConcurrentContextualBayesBandit banditry = new ConcurrentContextualBayesBandit(
+                CompressedRowMatrix.copyOf(recipes), 1, 1, new Random(2), 4);
+
+        // each thread trains and samples at the same time and counts what it trained
+        int threads = 8;
+        final int steps = 20000;
+        ExecutorService ex = Executors.newFixedThreadPool(threads);
+        List<Future<int[][]>> results = Lists.newArrayList();
+        for (int t = 0; t < threads; t++) {
+            final int seed = t;
+            results.add(ex.submit(new Callable<int[][]>() {
+                @Override
+                public int[][] call() {
+                    Random gen = new Random(seed);
+                    int[][] trained = new int[2][arms];
+                    int[] top = new int[5];
+                    for (int i = 0; i < steps; i++) {
+                        int k = gen.nextInt(arms);
+                        boolean success = gen.nextBoolean();
+                        banditry.train(k, success);
+                        trained[success ? 0 : 1][k]++;
+                        if (i % 100 == 0) {
+                            assertTrue(banditry.sample() >= 0);
+                            assertEquals(5, banditry.rank(top));
+                        }
+                    }
+                    return trained;
+                }
+            }));
+        }
+
+        double[] alpha = new double[features];
+        double[] beta = new double[features];
+        for (Future<int[][]> result : results) {
+            int[][] trained = result.get();
+            for (int i = 0; i < arms; i++) {
+                for (int j = 0; j < features; j++) {
+                    alpha[j] += trained[0][i] * recipes.get(i, j) / features;
+                    beta[j] += trained[1][i] * recipes.get(i, j) / features;
+                }
+            }
+        }
+        ex.shutdown();
+
+        for (int j = 0; j < features; j++) {
+            assertEquals(1 + alpha[j], banditry.getAlpha(j), 1e-6);
+            assertEquals(1 + beta[j], banditry.getBeta(j), 1e-6);
+        }
+    }
+
+    @Test
+    public void testSnapshot() {
+        Matrix identity = new DenseMatrix(4, 4);
+        for (int i = 0; i < 4; i++) {
+            identity.set(i, i, 1);
+        }
+        ConcurrentContextualBayesBandit banditry = new ConcurrentContextualBayesBandit(
+                CompressedRowMatrix.copyOf(identity), 1, 1, new Random(3), 64);
+        banditry.setRefreshInterval(10);
+        banditry.setMaxStaleness(1, TimeUnit.HOURS);
+
+        // samples use a snapshot that can be up to 9 updates behind
+        for (int i = 0; i < 9; i++) {
+            banditry.train(2, true);
+            assertEquals(1, banditry.sampleCounts()[0][2], 0);
+            assertEquals(1 + (i + 1) / 4.0, banditry.getAlpha(2), 1e-10);
+        }
+        banditry.train(2, true);
+        double[][] counts = banditry.sampleCounts();
+        assertEquals(1 + 10 / 4.0, counts[0][2], 1e-10);
+        assertEquals(1, counts[1][2], 0);
+        assertTrue(counts == banditry.sampleCounts());
+
+        for (int i = 0; i < 20000; i++) {
+            banditry.train(2, true);
+            banditry.train(1, false);
+        }
+        int[] picks = new int[4];
+        for (int i = 0; i < 1000; i++) {
+            picks[banditry.sample()]++;
+        }
+        assertEquals(1000, picks[2], 10);
+    }
+
+    @Test
+    public void testStaleness() throws InterruptedException {
+        Matrix identity = new DenseMatrix(4, 4);
+        for (int i = 0; i < 4; i++) {
+            identity.set(i, i, 1);
+        }
+        ConcurrentContextualBayesBandit banditry = new ConcurrentContextualBayesBandit(
+                CompressedRowMatrix.copyOf(identity), 1, 1, new Random(3), 4);
+        banditry.setRefreshInterval(1000);
+        banditry.setMaxStaleness(1, TimeUnit.HOURS);
+
+        // a few updates and then a pause in training
+        for (int i = 0; i < 3; i++) {
+            banditry.train(1, false);
+        }
+        double[][] first = banditry.sampleCounts();
+        assertEquals(1, first[1][1], 0);
+
+        // once the snapshot is old enough the next sample catches up
+        banditry.setMaxStaleness(20, TimeUnit.MILLISECONDS);
+        Thread.sleep(30);
+        double[][] second = banditry.sampleCounts();
+        assertEquals(1 + 3 / 4.0, second[1][1], 1e-10);
+        assertNotSame(first, second);
+        // with nothing new, the snapshot is kept however old it is
+        Thread.sleep(30);
+        assertSame(second, banditry.sampleCounts());
+
+        // rebuilding alternates between two sets of arrays
+        banditry.setMaxStaleness(0, TimeUnit.NANOSECONDS);
+        banditry.train(1, false);
+        double[][] third = banditry.sampleCounts();
+        assertSame(first, third);
+        assertEquals(1 + 4 / 4.0, third[1][1], 1e-10);
+        assertEquals(1 + 3 / 4.0, second[1][1], 1e-10);
+    }
+}
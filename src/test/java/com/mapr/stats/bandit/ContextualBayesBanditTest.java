@@ -17,15 +17,26 @@
 
 package com.mapr.stats.bandit;
 
+import com.google.common.collect.Sets;
+import com.google.common.primitives.Ints;
 import org.apache.mahout.common.RandomUtils;
 import org.apache.mahout.math.DenseMatrix;
 import org.apache.mahout.math.DenseVector;
 import org.apache.mahout.math.Matrix;
+import org.apache.mahout.math.SparseRowMatrix;
 import org.apache.mahout.math.Vector;
 import org.apache.mahout.math.function.DoubleFunction;
 import org.junit.Test;
 
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
 
 public class ContextualBayesBanditTest {
     @Test
@@ -54,4 +65,149 @@ public class ContextualBayesBanditTest {
             banditry.train(k, success);
         }
     }
+
+    @Test
+    public void testSparse() {
+        final Random rand = new Random(1);
+        int arms = 200;
+        int features = 100000;
+        Matrix recipes = new SparseRowMatrix(arms, features);
+        for (int i = 0; i < arms; i++) {
+            for (int j = 0; j < 12; j++) {
+                recipes.set(i, rand.nextInt(features), 1);
+            }
+        }
+
+        CompressedRowMatrix csr = CompressedRowMatrix.copyOf(recipes);
+        assertEquals(arms, csr.numRows());
+        assertEquals(features, csr.numCols());
+        int nonZeros = 0;
+        for (int i = 0; i < arms; i++) {
+            nonZeros += recipes.viewRow(i).getNumNondefaultElements();
+        }
+        assertEquals(nonZeros, csr.numNonZeros());
+
+        double[] x = new double[features];
+        for (int j = 0; j < features; j++) {
+            x[j] = rand.nextGaussian();
+        }
+        double[] y = new double[arms];
+        csr.times(x, y);
+        Vector expected = recipes.times(new DenseVector(x));
+        for (int i = 0; i < arms; i++) {
+            assertEquals(expected.get(i), y[i], 1e-10);
+        }
+
+        ContextualBayesBandit banditry = new ContextualBayesBandit(recipes);
+        for (int i = 0; i < 100; i++) {
+            int k = banditry.sample();
+            assertEquals(arms, banditry.samplePi().size());
+            banditry.train(k, rand.nextDouble() < 0.3);
+        }
+
+        int[] top = new int[10];
+        assertEquals(10, banditry.rank(top));
+        assertEquals(10, Sets.newHashSet(Ints.asList(top)).size());
+    }
+
+    @Test
+    public void testAllocationFree() {
+        // per-thread allocation counts are an extension that not every JVM has
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+        long thread = Thread.currentThread().getId();
+
+        Random rand = new Random(4);
+        int arms = 20;
+        int features = 100;
+        Matrix recipes = new SparseRowMatrix(arms, features);
+        for (int i = 0; i < arms; i++) {
+            for (int j = 0; j < 8; j++) {
+                recipes.set(i, rand.nextInt(features), 1);
+            }
+        }
+        ContextualBayesBandit banditry = new ContextualBayesBandit(recipes);
+        for (int i = 0; i < 1000; i++) {
+            banditry.train(rand.nextInt(arms), rand.nextDouble() < 0.2);
+        }
+
+        // allocation only stops once the JIT has compiled the loops so allow a few rounds to warm up
+        int[] top = new int[5];
+        long allocated = Long.MAX_VALUE;
+        for (int round = 0; round < 20 && allocated > 0; round++) {
+            long t0 = threads.getThreadAllocatedBytes(thread);
+            for (int i = 0; i < 5000; i++) {
+                banditry.sample();
+                banditry.rank(top);
+            }
+            allocated = threads.getThreadAllocatedBytes(thread) - t0;
+        }
+        assertTrue("allocated " + allocated + " bytes", allocated == 0);
+    }
+
+    @Test
+    public void testBatch() {
+        Random rand = new Random(2);
+        int arms = 5;
+        Matrix identity = new DenseMatrix(arms, arms);
+        for (int i = 0; i < arms; i++) {
+            identity.set(i, i, 1);
+        }
+        ContextualBayesBandit banditry = new ContextualBayesBandit(identity);
+        for (int i = 0; i < 2000; i++) {
+            int k = rand.nextInt(arms);
+            banditry.train(k, k == 3 || (k == 1 && rand.nextDouble() < 0.5));
+        }
+
+        int[] choices = new int[150];
+        banditry.sampleBatch(choices);
+        int[][] top = new int[150][3];
+        banditry.rankBatch(top);
+        for (int b = 0; b < choices.length; b++) {
+            assertEquals(3, choices[b]);
+            assertEquals(3, top[b][0]);
+            assertEquals(1, top[b][1]);
+        }
+    }
+
+    @Test
+    public void testParallelScoring() {
+        Random rand = new Random(3);
+        int arms = 20000;
+        int features = 1000;
+        int[] rowStart = new int[arms + 1];
+        int[] columns = new int[arms * 5];
+        double[] values = new double[arms * 5];
+        for (int i = 0; i < arms; i++) {
+            rowStart[i] = 5 * i;
+            for (int j = 0; j < 5; j++) {
+                columns[5 * i + j] = rand.nextInt(features);
+                values[5 * i + j] = rand.nextDouble();
+            }
+        }
+        rowStart[arms] = 5 * arms;
+        CompressedRowMatrix recipes = new CompressedRowMatrix(features, rowStart, columns, values);
+
+        ContextualBayesBandit sequential = new ContextualBayesBandit(recipes, 1, 1, new Random(4));
+        ContextualBayesBandit parallel = new ContextualBayesBandit(recipes, 1, 1, new Random(4));
+        ForkJoinPool pool = new ForkJoinPool(4);
+        parallel.setParallelScoring(pool, 1000);
+
+        for (int i = 0; i < 20; i++) {
+            int k = sequential.sample();
+            assertEquals(k, parallel.sample());
+            boolean success = rand.nextDouble() < 0.5;
+            sequential.train(k, success);
+            parallel.train(k, success);
+
+            int[] expected = new int[25];
+            int[] actual = new int[25];
+            sequential.rank(expected);
+            parallel.rank(actual);
+            assertArrayEquals(expected, actual);
+        }
+        pool.shutdown();
+    }
 }
@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mapr.stats.bandit;
+
+import com.google.common.collect.Sets;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class EpsilonGreedyTest {
+    @Test
+    public void testGreedy() {
+        EpsilonGreedy eg = new EpsilonGreedy(10, 0, new Random(1));
+        assertEquals(0, eg.sample());
+
+        // bandit 0 drops, so best must be recomputed
+        eg.train(0, 0);
+        eg.train(3, 1);
+        assertEquals(1, eg.sample());
+
+        eg.train(1, 0);
+        eg.train(2, 0);
+        assertEquals(3, eg.sample());
+
+        eg.train(3, 0.5);
+        assertEquals(4, eg.sample());
+        assertEquals(2.5 / 3, eg.getMean(3), 1e-10);
+
+        eg.train(7, 5);
+        assertEquals(7, eg.sample());
+        assertEquals(7, eg.rank(3).get(0).intValue());
+    }
+
+    @Test
+    public void testRank() {
+        Random gen = new Random(2);
+        EpsilonGreedy eg = new EpsilonGreedy(50, 0.1, gen);
+        for (int i = 0; i < 5000; i++) {
+            int k = gen.nextInt(50);
+            eg.train(k, gen.nextDouble() < k / 50.0 ? 1 : 0);
+        }
+
+        int top = 0;
+        for (int i = 0; i < 100; i++) {
+            List<Integer> r = eg.rank(10);
+            assertEquals(10, r.size());
+            assertEquals(10, Sets.newHashSet(r).size());
+            if (r.get(0) >= 40) {
+                top++;
+            }
+        }
+        assertEquals(90, top, 10);
+
+        List<Integer> all = eg.rank(100);
+        assertEquals(50, all.size());
+        assertEquals(50, Sets.newHashSet(all).size());
+    }
+
+    @Test
+    public void testBestTracking() {
+        // with 0/1 rewards the best bandit often gets worse, the heap must keep up
+        Random gen = new Random(3);
+        EpsilonGreedy eg = new EpsilonGreedy(200, 0, gen);
+        for (int i = 0; i < 20000; i++) {
+            int k = gen.nextInt(200);
+            eg.train(k, gen.nextDouble() < 0.3 ? 1 : 0);
+
+            int best = 0;
+            for (int j = 1; j < 200; j++) {
+                if (eg.getMean(j) > eg.getMean(best)) {
+                    best = j;
+                }
+            }
+            assertEquals(best, eg.sample());
+        }
+    }
+
+    @Test
+    public void testEmpty() {
+        EpsilonGreedy eg = new EpsilonGreedy(0, 0.5, new Random(4));
+        assertEquals(0, eg.size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(-1, eg.sample());
+        }
+        assertEquals(0, eg.rank(5).size());
+        eg.sampleAll(new double[0]);
+    }
+}
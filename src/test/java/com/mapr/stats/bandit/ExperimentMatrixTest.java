@@ -0,0 +1,252 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mapr.stats.bandit;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.Sets;
+import com.google.common.io.Files;
+import com.mapr.stats.io.ColumnarSink;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ExperimentMatrixTest {
+    private static final String CONFIG = "" +
+            "# defaults\n" +
+            "seed 7\n" +
+            "replications 10\n" +
+            "\n" +
+            "matrix small   # two factories\n" +
+            "factory beta\n" +
+            "factory epsilon 0.1\n" +
+            "sampler binomial 1 1\n" +
+            "arms 2 5\n" +
+            "steps 100\n" +
+            "\n" +
+            "matrix normal\n" +
+            "replications 4\n" +
+            "factory gamma-normal\n" +
+            "sampler normal 0.5\n" +
+            "arms 3\n" +
+            "steps 50 200\n" +
+            "\n" +
+            "matrix drift\n" +
+            "precision 5\n" +
+            "factory beta\n" +
+            "sampler drift 1 3 0.01\n" +
+            "arms 10\n" +
+            "steps 100\n";
+
+    @Test
+    public void testParse() throws IOException {
+        List<ExperimentMatrix.Job> jobs = ExperimentMatrix.parse(new StringReader(CONFIG));
+        assertEquals(7, jobs.size());
+        assertEquals("small-beta-binomial_1_1-2x100", jobs.get(0).getId());
+        assertEquals("small-epsilon_0.1-binomial_1_1-5x100", jobs.get(3).getId());
+        assertEquals("normal-gamma-normal-normal_0.5-3x200", jobs.get(5).getId());
+        assertEquals(10 * 100 * 5, jobs.get(3).cost(), 0);
+        assertEquals(4 * 200 * 3, jobs.get(5).cost(), 0);
+        assertEquals("drift-beta-drift_1_3_0.01-10x100", jobs.get(6).getId());
+        assertTrue(ExperimentMatrix.factory("beta-table").createBandit(3, new Random()) instanceof BetaBayesModel);
+    }
+
+    @Test
+    public void testBadConfig() throws IOException {
+        try {
+            ExperimentMatrix.parse(new StringReader("matrix x\nfactory beta\nsampler poisson 3\n"));
+            fail("Should have rejected unknown sampler");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("line 3"));
+        }
+        try {
+            ExperimentMatrix.parse(new StringReader("matrix x\nfactory beta\nsampler drift 1 1\n"));
+            fail("Should have rejected drift without a step size");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("line 3"));
+        }
+        try {
+            ExperimentMatrix.parse(new StringReader("matrix x\nfactory beta\nsampler normal 1\narms 2\n"));
+            fail("Should have rejected matrix with no steps");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("steps"));
+        }
+    }
+
+    @Test
+    public void testRunAndResume() throws IOException, InterruptedException {
+        File dir = Files.createTempDir();
+        try {
+            List<ExperimentMatrix.Job> jobs = ExperimentMatrix.parse(new StringReader(CONFIG));
+            assertEquals(7, ExperimentMatrix.run(jobs, dir, 2));
+            for (ExperimentMatrix.Job job : jobs) {
+                assertEquals("done", job.getStatus());
+                assertTrue(new File(dir, job.cumulativeOutput()).exists());
+                assertTrue(new File(dir, job.localOutput()).exists());
+            }
+            List<String> manifest = Files.readLines(new File(dir, ExperimentMatrix.MANIFEST), Charsets.UTF_8);
+            assertEquals(8, manifest.size());
+            assertTrue(manifest.get(1).startsWith("small-beta-binomial_1_1-2x100\tbeta\tbinomial 1 1\t2\t100\t10\t"));
+            assertTrue(manifest.get(1).endsWith("\t10"));
+            // the drifting job only needs enough replications for the precision
+            assertTrue(jobs.get(6).getEstimate().isConverged());
+            assertTrue(manifest.get(7).endsWith("\t" + jobs.get(6).getEstimate().getReplications()));
+
+            // a second run finds everything already done and keeps the manifest
+            jobs = ExperimentMatrix.parse(new StringReader(CONFIG));
+            assertEquals(0, ExperimentMatrix.run(jobs, dir, 2));
+            assertEquals("skipped", jobs.get(0).getStatus());
+            assertEquals(manifest, Files.readLines(new File(dir, ExperimentMatrix.MANIFEST), Charsets.UTF_8));
+
+            // resuming with one result missing reruns just that job and keeps the other rows
+            assertTrue(new File(dir, jobs.get(6).localOutput()).delete());
+            jobs = ExperimentMatrix.parse(new StringReader(CONFIG));
+            assertEquals(1, ExperimentMatrix.run(jobs, dir, 2));
+            List<String> resumed = Files.readLines(new File(dir, ExperimentMatrix.MANIFEST), Charsets.UTF_8);
+            assertEquals(manifest.subList(0, 7), resumed.subList(0, 7));
+            assertTrue(resumed.get(7).startsWith("drift-beta-drift_1_3_0.01-10x100\t"));
+            assertTrue(resumed.get(7).contains("\tdone\t"));
+        } finally {
+            for (File f : dir.listFiles()) {
+                f.delete();
+            }
+            dir.delete();
+        }
+    }
+
+    @Test
+    public void testColumnarOutput() throws IOException, InterruptedException {
+        File dir = Files.createTempDir();
+        try {
+            List<ExperimentMatrix.Job> jobs = ExperimentMatrix.parse(new StringReader(
+                    "format bin\nmatrix m\nreplications 3\nfactory ucb1\nsampler binomial 1 1\narms 4\nsteps 300\n"));
+            assertEquals("regret-m-ucb1-binomial_1_1-4x300.bin", jobs.get(0).cumulativeOutput());
+            assertEquals(1, ExperimentMatrix.run(jobs, dir, 1));
+            try (InputStream in = new FileInputStream(new File(dir, jobs.get(0).localOutput()))) {
+                Map<String, double[]> local = ColumnarSink.read(in);
+                assertEquals(300, local.get("n").length);
+                assertEquals(299, local.get("n")[299], 0);
+            }
+        } finally {
+            for (File f : dir.listFiles()) {
+                f.delete();
+            }
+            dir.delete();
+        }
+    }
+
+    @Test
+    public void testLogBuckets() throws IOException, InterruptedException {
+        try {
+            ExperimentMatrix.parse(new StringReader("buckets square\n"));
+            fail("Should have rejected unknown bucketing");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("line 1"));
+        }
+
+        File dir = Files.createTempDir();
+        try {
+            List<ExperimentMatrix.Job> jobs = ExperimentMatrix.parse(new StringReader(
+                    "format bin\nmatrix m\nreplications 3\nbuckets log\nfactory beta\nsampler binomial 1 1\narms 4\nsteps 5000\n"));
+            assertEquals(1, ExperimentMatrix.run(jobs, dir, 1));
+            try (InputStream in = new FileInputStream(new File(dir, jobs.get(0).localOutput()))) {
+                Map<String, double[]> local = ColumnarSink.read(in);
+                double[] n = local.get("n");
+                assertTrue(n.length < 500);
+                assertEquals(5000, n[n.length - 1], 0);
+                for (double mean : local.get("mean")) {
+                    assertTrue(mean >= 0 && mean <= 1);
+                }
+            }
+        } finally {
+            for (File f : dir.listFiles()) {
+                f.delete();
+            }
+            dir.delete();
+        }
+    }
+
+    @Test
+    public void testNamedOutput() throws IOException {
+        List<ExperimentMatrix.Job> jobs = ExperimentMatrix.parse(new StringReader(
+                "matrix m\nfactory beta\nsampler binomial 1 1\narms 20\nsteps 10\noutput regret-20 local-20\n"));
+        assertEquals("regret-20.tsv", jobs.get(0).cumulativeOutput());
+        assertEquals("local-20.tsv", jobs.get(0).localOutput());
+        try {
+            ExperimentMatrix.parse(new StringReader(
+                    "matrix m\nfactory beta\nsampler binomial 1 1\narms 2 20\nsteps 10\noutput regret local\n"));
+            fail("Should have rejected named output for several jobs");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("output"));
+        }
+
+        // the standard experiments write the same files they always have, with one row per step
+        assertFalse(BanditTrainer.DEFAULT_EXPERIMENTS.contains("buckets"));
+        Set<String> names = Sets.newHashSet();
+        for (ExperimentMatrix.Job job : ExperimentMatrix.parse(new StringReader(BanditTrainer.DEFAULT_EXPERIMENTS))) {
+            names.add(job.cumulativeOutput());
+            names.add(job.localOutput());
+        }
+        assertEquals(Sets.newHashSet("regret-normal-0.1.tsv", "local-normal-0.1.tsv",
+                "regret-normal-10x0.1.tsv", "local-normal-10x0.1.tsv",
+                "regret-normal-100x0.1.tsv", "local-normal-100x0.1.tsv",
+                "regret-normal-1.tsv", "local-normal-1.tsv",
+                "regret-epsilon-normal-1.tsv", "local-epsilon-normal-1.tsv",
+                "regret.tsv", "local.tsv", "regret-20.tsv", "local-20.tsv", "regret-100.tsv", "local-100.tsv"), names);
+    }
+
+    @Test
+    public void testFailureCleansUp() throws IOException, InterruptedException {
+        File dir = Files.createTempDir();
+        try {
+            List<ExperimentMatrix.Job> jobs = ExperimentMatrix.parse(new StringReader(
+                    "matrix m\nreplications 3\nfactory beta\nsampler binomial 1 1\narms 2\nsteps 20\n"));
+            // a directory in the way makes the final rename fail after the results are written
+            File blocker = new File(dir, jobs.get(0).localOutput());
+            assertTrue(blocker.mkdir());
+            Files.touch(new File(blocker, "x"));
+
+            assertEquals(0, ExperimentMatrix.run(jobs, dir, 1));
+            assertEquals("failed", jobs.get(0).getStatus());
+            for (String name : dir.list()) {
+                assertFalse(name, name.startsWith("tmp-"));
+            }
+            assertTrue(!new File(dir, jobs.get(0).cumulativeOutput()).exists());
+
+            new File(blocker, "x").delete();
+            blocker.delete();
+        } finally {
+            for (File f : dir.listFiles()) {
+                f.delete();
+            }
+            dir.delete();
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mapr.stats.bandit;
+
+import org.apache.mahout.math.DenseMatrix;
+import org.apache.mahout.math.Matrix;
+import org.apache.mahout.math.Vector;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FastLinkTest {
+    @Test
+    public void testLogisticError() {
+        double maxError = 0;
+        for (double x = -20; x <= 20; x += 1e-4) {
+            maxError = Math.max(maxError, Math.abs(FastLink.logistic(x) - 1 / (1 + Math.exp(-x))));
+        }
+        assertTrue("max error = " + maxError, maxError < 1e-6);
+    }
+
+    @Test
+    public void testLogitError() {
+        double maxError = 0;
+        for (double p = 1e-6; p < 1; p += 1e-5) {
+            maxError = Math.max(maxError, Math.abs(FastLink.logit(p) - Math.log(p / (1 - p))));
+        }
+        for (double p = 1e-300; p < 1e-6; p *= 1.1) {
+            maxError = Math.max(maxError, Math.abs(FastLink.logit(p) - Math.log(p / (1 - p))));
+        }
+        assertTrue("max error = " + maxError, maxError < 1e-6);
+        assertEquals(Double.NEGATIVE_INFINITY, FastLink.logit(0), 0);
+        assertEquals(Double.POSITIVE_INFINITY, FastLink.logit(1), 0);
+    }
+
+    @Test
+    public void testMonotonic() {
+        Random gen = new Random(1);
+        for (int i = 0; i < 100000; i++) {
+            double x = gen.nextGaussian() * 8;
+            double y = x + gen.nextDouble() * 1e-3;
+            assertTrue(FastLink.logistic(x) <= FastLink.logistic(y));
+        }
+    }
+
+    @Test
+    public void testRankEquivalence() {
+        Random gen = new Random(2);
+        int arms = 500;
+        Matrix recipes = new DenseMatrix(arms, 20);
+        for (int i = 0; i < arms; i++) {
+            for (int j = 0; j < 20; j++) {
+                if (gen.nextDouble() < 0.3) {
+                    recipes.set(i, j, 1);
+                }
+            }
+        }
+        CompressedRowMatrix csr = CompressedRowMatrix.copyOf(recipes);
+        ContextualBayesBandit exact = new ContextualBayesBandit(csr, 1, 1, new Random(3));
+        ContextualBayesBandit fast = new ContextualBayesBandit(csr, 1, 1, new Random(3));
+        fast.setFastLink(true);
+
+        for (int step = 0; step < 50; step++) {
+            int[] expected = new int[10];
+            int[] actual = new int[10];
+            exact.rank(expected);
+            fast.rank(actual);
+            assertArrayEquals(expected, actual);
+
+            int k = expected[0];
+            boolean success = gen.nextDouble() < 0.4;
+            exact.train(k, success);
+            fast.train(k, success);
+
+            Vector pExact = exact.samplePi();
+            Vector pFast = fast.samplePi();
+            for (int i = 0; i < arms; i++) {
+                assertEquals(pExact.get(i), pFast.get(i), 1e-5);
+            }
+        }
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mapr.stats.bandit;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertTrue;
+
+public class HashedContextualBanditTest {
+    @Test
+    public void testConvergence() {
+        Random gen = new Random(1);
+        HashedContextualBandit banditry = new HashedContextualBandit(16, 1, 1, gen);
+
+        // arms churn constantly, but arms tagged "good" are much better than others
+        int good = 0;
+        for (int step = 0; step < 3000; step++) {
+            List<int[]> arms = Lists.newArrayList();
+            boolean[] isGood = new boolean[20];
+            for (int i = 0; i < 20; i++) {
+                isGood[i] = gen.nextDouble() < 0.2;
+                String topic = "topic-" + gen.nextInt(10);
+                arms.add(banditry.hash(ImmutableList.of(isGood[i] ? "good" : "meh", topic)));
+            }
+
+            int k = banditry.sample(arms);
+            if (step >= 2000 && isGood[k]) {
+                good++;
+            }
+            banditry.train(arms.get(k), gen.nextDouble() < (isGood[k] ? 0.6 : 0.2));
+        }
+        // without learning, only about 200 of these would be good
+        assertTrue("good = " + good, good > 600);
+
+        List<int[]> arms = ImmutableList.of(
+                banditry.hash(ImmutableList.of("meh", "topic-1")),
+                banditry.hash(ImmutableList.of("good", "topic-2")),
+                banditry.hash(ImmutableList.of("meh", "topic-3")));
+        int[] top = new int[3];
+        int wins = 0;
+        for (int i = 0; i < 100; i++) {
+            banditry.rank(arms, top);
+            if (top[0] == 1) {
+                wins++;
+            }
+        }
+        assertTrue("wins = " + wins, wins > 80);
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mapr.stats.bandit;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class IndexBanditTest {
+    @Test
+    public void testHeap() {
+        Random gen = new Random(1);
+        int n = 1000;
+        IndexedMaxHeap heap = new IndexedMaxHeap(n);
+        double[] keys = new double[n];
+        for (int i = 0; i < n; i++) {
+            keys[i] = gen.nextDouble();
+            heap.set(i, keys[i]);
+        }
+        heap.heapify();
+        checkHeap(heap, keys);
+
+        for (int step = 0; step < 10000; step++) {
+            int i = gen.nextInt(n);
+            keys[i] = gen.nextGaussian();
+            heap.update(i, keys[i]);
+        }
+        checkHeap(heap, keys);
+    }
+
+    private void checkHeap(IndexedMaxHeap heap, double[] keys) {
+        double[] sorted = keys.clone();
+        Arrays.sort(sorted);
+
+        int[] top = new int[50];
+        assertEquals(50, heap.top(top));
+        for (int j = 0; j < top.length; j++) {
+            assertEquals(sorted[sorted.length - 1 - j], keys[top[j]], 0);
+        }
+        assertEquals(top[0], heap.top());
+    }
+
+    @Test
+    public void testConvergence() {
+        for (BanditFactory factory : new BanditFactory[]{new Ucb1Factory(), new KlUcbFactory(), new BayesUcbFactory()}) {
+            Random gen = new Random(2);
+            double[] p = {0.1, 0.3, 0.5, 0.55, 0.7};
+            BayesianBandit bandit = factory.createBandit(p.length, gen);
+
+            int best = 0;
+            for (int i = 0; i < 20000; i++) {
+                int k = bandit.sample();
+                if (k == 4) {
+                    best++;
+                }
+                bandit.train(k, gen.nextDouble() < p[k] ? 1 : 0);
+            }
+            assertTrue(factory.getClass().getSimpleName(), best > 16000);
+
+            List<Integer> r = bandit.rank(5);
+            assertEquals(5, r.size());
+            assertEquals(4, r.get(0).intValue());
+            assertEquals(0.7, bandit.getMean(4), 0.02);
+        }
+    }
+
+    @Test
+    public void testEmpty() {
+        for (BanditFactory factory : new BanditFactory[]{new Ucb1Factory(), new KlUcbFactory(), new BayesUcbFactory()}) {
+            BayesianBandit bandit = factory.createBandit(0, new Random(4));
+            assertEquals(0, bandit.size());
+            assertEquals(-1, bandit.sample());
+            assertEquals(0, bandit.rank(5).size());
+            bandit.sampleAll(new double[0]);
+        }
+    }
+}
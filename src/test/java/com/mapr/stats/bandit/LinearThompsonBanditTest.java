@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mapr.stats.bandit;
+
+import org.apache.mahout.math.DenseMatrix;
+import org.apache.mahout.math.DenseVector;
+import org.apache.mahout.math.Matrix;
+import org.apache.mahout.math.Vector;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LinearThompsonBanditTest {
+    @Test
+    public void testCholeskyUpdate() {
+        Random gen = new Random(1);
+        int d = 20;
+        LinearThompsonBandit bandit = new LinearThompsonBandit(d, 2, 1, gen);
+        Matrix a = new DenseMatrix(d, d);
+        for (int i = 0; i < d; i++) {
+            a.set(i, i, 2);
+        }
+
+        for (int step = 0; step < 500; step++) {
+            Vector x = new DenseVector(d);
+            for (int i = 0; i < d; i++) {
+                x.set(i, gen.nextGaussian());
+            }
+            bandit.train(x, gen.nextDouble());
+            a = a.plus(x.cross(x));
+        }
+
+        Matrix l = bandit.getCholeskyFactor();
+        Matrix product = l.times(l.transpose());
+        for (int i = 0; i < d; i++) {
+            for (int j = 0; j < d; j++) {
+                assertEquals(a.get(i, j), product.get(i, j), 1e-8 * Math.abs(a.get(i, j)) + 1e-8);
+                if (j > i) {
+                    assertEquals(0, l.get(i, j), 0);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testConvergence() {
+        Random gen = new Random(2);
+        int d = 5;
+        Vector weights = new DenseVector(new double[]{0.5, -0.2, 0.1, 0.3, 0});
+        LinearThompsonBandit bandit = new LinearThompsonBandit(d, 1, 1, gen);
+
+        int correct = 0;
+        for (int step = 0; step < 3000; step++) {
+            Matrix contexts = new DenseMatrix(10, d);
+            for (int i = 0; i < 10; i++) {
+                for (int j = 0; j < d; j++) {
+                    contexts.set(i, j, gen.nextDouble());
+                }
+            }
+            Vector expected = contexts.times(weights);
+
+            int k = bandit.sample(contexts);
+            if (step >= 2000 && k == expected.maxValueIndex()) {
+                correct++;
+            }
+            bandit.train(contexts.viewRow(k), expected.get(k) + 0.1 * gen.nextGaussian());
+        }
+        assertTrue(correct > 800);
+
+        Vector mean = bandit.getMean();
+        for (int j = 0; j < d; j++) {
+            assertEquals(weights.get(j), mean.get(j), 0.05);
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mapr.stats.bandit;
+
+import com.mapr.stats.io.ResultSink;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class RegretCurveTest {
+    @Test
+    public void testLinearBuckets() {
+        RegretCurve curve = RegretCurve.linear(10, 3);
+        assertEquals(4, curve.size());
+        assertEquals(0, curve.bucket(0));
+        assertEquals(0, curve.bucket(2));
+        assertEquals(1, curve.bucket(3));
+        assertEquals(3, curve.bucket(9));
+        assertEquals(-1, curve.bucket(10));
+        assertEquals(6, curve.label(2));
+        assertEquals(10, curve.end(3));
+    }
+
+    @Test
+    public void testLogBuckets() {
+        RegretCurve curve = RegretCurve.logSpaced(1000);
+        // every step up to 51, then every other step, and so on
+        assertEquals(1, curve.label(0));
+        assertEquals(51, curve.label(50));
+        assertEquals(52, curve.label(51));
+        assertEquals(54, curve.label(52));
+        assertEquals(1000, curve.label(curve.size() - 1));
+        int previous = 0;
+        for (int k = 0; k < curve.size(); k++) {
+            assertEquals(k, curve.bucket(previous));
+            assertEquals(k, curve.bucket(curve.end(k) - 1));
+            previous = curve.end(k);
+        }
+    }
+
+    @Test
+    public void testMoments() throws IOException {
+        Random gen = new Random(3);
+        RegretCurve a = RegretCurve.linear(5, 1);
+        RegretCurve b = a.emptyCopy();
+        double[] x = new double[1000];
+        double mean = 0;
+        for (int i = 0; i < x.length; i++) {
+            x[i] = gen.nextGaussian() * 3 + 2;
+            mean += x[i] / x.length;
+            (i % 2 == 0 ? a : b).add(4, x[i]);
+        }
+        double ss = 0;
+        for (double v : x) {
+            ss += (v - mean) * (v - mean);
+        }
+        a.merge(b);
+        assertEquals(1000, a.count(4));
+        assertEquals(mean, a.mean(4), 1e-10);
+        assertEquals(Math.sqrt(ss / (x.length - 1)), a.sd(4), 1e-8);
+        assertEquals(0, a.count(0));
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ResultSink out = ResultSink.open(bytes, ResultSink.Format.TSV, "n", "mean")) {
+            a.write(out);
+        }
+        assertEquals(String.format("n\tmean\n4\t%.4f\n", a.mean(4)), bytes.toString("UTF-8"));
+    }
+
+    @Test
+    public void testLargeOffset() {
+        // a raw sum of squares would lose all of the digits of the spread to cancellation
+        RegretCurve a = RegretCurve.linear(1, 1);
+        RegretCurve b = a.emptyCopy();
+        for (int i = 0; i < 1000; i++) {
+            (i < 300 ? a : b).add(0, 1e9 + (i % 2 == 0 ? 1 : -1));
+        }
+        a.merge(b);
+        assertEquals(1e9, a.mean(0), 1e-6);
+        assertEquals(Math.sqrt(1000.0 / 999), a.sd(0), 1e-9);
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mapr.stats.bandit;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class RegretEstimateTest {
+    @Test
+    public void testQuantile() {
+        // from standard tables
+        assertEquals(2.571, RegretEstimate.tQuantile(5), 0.002);
+        assertEquals(2.228, RegretEstimate.tQuantile(10), 0.001);
+        assertEquals(2.042, RegretEstimate.tQuantile(30), 0.001);
+        assertEquals(1.984, RegretEstimate.tQuantile(100), 0.001);
+        assertEquals(1.960, RegretEstimate.tQuantile(1000000), 0.001);
+    }
+
+    @Test
+    public void testEstimate() {
+        double[] x = {3, 1, 4, 1, 5, 9, 2, 6, 0, 0};
+        RegretEstimate e = RegretEstimate.of(x, 8, 2);
+        assertEquals(8, e.getReplications());
+        assertEquals(31.0 / 8, e.getMean(), 1e-12);
+        assertEquals(3.5, e.getMedian(), 0);
+        double sd = Math.sqrt(52.875 / 7);
+        assertEquals(sd, e.getSd(), 1e-12);
+        assertEquals(RegretEstimate.tQuantile(7) * sd / Math.sqrt(8), e.getHalfWidth(), 1e-12);
+        assertFalse(e.isConverged());
+        assertTrue(RegretEstimate.of(x, 8, 3).isConverged());
+    }
+}
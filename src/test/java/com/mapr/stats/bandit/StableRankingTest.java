@@ -0,0 +1,117 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mapr.stats.bandit;
+
+import com.google.common.collect.Sets;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class StableRankingTest {
+    @Test
+    public void testRanking() {
+        for (BayesianBandit bandit : new BayesianBandit[]{new BetaBayesModel(40, new Random(1)),
+                new CompactBetaBayesModel(40, new Random(1))}) {
+            Random gen = new Random(2);
+            // arm i converts with probability i / 50
+            for (int i = 0; i < 40; i++) {
+                for (int j = 0; j < 400; j++) {
+                    bandit.train(i, gen.nextDouble() < i / 50.0 ? 1 : 0);
+                }
+            }
+
+            StableRanking stable = new StableRanking(bandit, 5, 500);
+            List<Integer> page = stable.rank(5);
+            assertEquals(5, page.size());
+            assertTrue(Sets.newHashSet(39, 38, 37, 36, 35, 34, 33).containsAll(page));
+
+            // the same ranking every time without any more sampling
+            assertSame(page.get(0), stable.rank(5).get(0));
+            assertEquals(page, stable.rank(10));
+            assertEquals(page.subList(0, 3), stable.rank(3));
+            assertEquals(0, stable.refresh());
+
+            double top = 0;
+            double best = 0;
+            for (int i = 0; i < 40; i++) {
+                top += stable.getProbabilityTopK(i);
+                best += stable.getProbabilityBest(i);
+            }
+            assertEquals(5, top, 1e-9);
+            assertEquals(1, best, 1e-9);
+            assertTrue(stable.getProbabilityTopK(page.get(0)) >= stable.getProbabilityTopK(page.get(4)));
+            assertEquals(0, stable.getProbabilityTopK(0), 0);
+        }
+    }
+
+    @Test
+    public void testIncremental() {
+        BetaBayesModel bandit = new BetaBayesModel(100, new Random(3));
+        Random gen = new Random(4);
+        StableRanking stable = new StableRanking(bandit, 10, 200);
+        assertEquals(200, stable.refresh());
+
+        for (int round = 0; round < 20; round++) {
+            for (int j = 0; j < 30; j++) {
+                int arm = gen.nextInt(100);
+                stable.train(arm, gen.nextDouble() < arm / 100.0 ? 1 : 0);
+            }
+            assertTrue(stable.getChangedArms() <= 30);
+            stable.refresh();
+            assertEquals(0, stable.getChangedArms());
+
+            // incremental updates should give exactly the counts of a full recount
+            int[] counts = stable.getTopCounts();
+            stable.recount();
+            assertArrayEquals(counts, stable.getTopCounts());
+            assertEquals(10 * 200, sum(counts));
+        }
+
+        // arms that can't reach the top k don't force any draws to be recomputed
+        for (int i = 0; i < 100; i++) {
+            for (int j = 0; j < 1000; j++) {
+                bandit.train(i, gen.nextDouble() < i / 100.0 ? 1 : 0);
+            }
+        }
+        stable.invalidate(0);
+        stable.invalidate(99);
+        stable.refresh();
+        stable.invalidate(0);
+        assertEquals(0, stable.refresh());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNeedsPosteriors() {
+        new StableRanking(new Ucb1Bandit(10), 3, 100);
+    }
+
+    private static int sum(int[] x) {
+        int r = 0;
+        for (int v : x) {
+            r += v;
+        }
+        return r;
+    }
+}
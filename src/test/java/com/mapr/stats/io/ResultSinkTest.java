@@ -0,0 +1,111 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mapr.stats.io;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class ResultSinkTest {
+    @Test
+    public void testMatchesFormat() throws IOException {
+        Random gen = new Random(1);
+        double[] special = {0, -0.0, 0.5, 1.5, 2.5, -2.5, 0.00005, 1.00005, 0.125, 1e17, -3e20,
+                Double.NaN, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, -0.00001, 123456789.987654321};
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        StringBuilder expected = new StringBuilder("x\ty\tn\n");
+        try (ResultSink out = ResultSink.open(bytes, ResultSink.Format.TSV, "x", "y", "n")) {
+            for (int i = 0; i < 100000; i++) {
+                double x = i < special.length ? special[i] : gen.nextGaussian() * Math.pow(10, gen.nextInt(12) - 6);
+                // values with few decimal places are often exact ties
+                double y = Math.round(x * 1000) / 1000.0;
+                int digits = i % 6;
+                long n = gen.nextLong() >> gen.nextInt(64);
+                out.add(x, digits).add(y, digits).add(n).endRow();
+                expected.append(String.format(Locale.ROOT, "%." + digits + "f\t%." + digits + "f\t%d\n", x, y, n));
+            }
+        }
+        assertEquals(expected.toString(), bytes.toString("UTF-8"));
+    }
+
+    @Test
+    public void testCsv() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ResultSink out = ResultSink.open(bytes, ResultSink.Format.CSV, "Trials", "Precision")) {
+            out.add(1).add(47.25, 1).endRow();
+            out.add(2).add(-3, 3).endRow();
+        }
+        assertEquals("Trials,Precision\n1,47.3\n2,-3.000\n", bytes.toString("UTF-8"));
+        assertEquals(ResultSink.Format.CSV, ResultSink.Format.forFile("quality.csv"));
+        assertEquals(ResultSink.Format.TSV, ResultSink.Format.forFile("regret.tsv"));
+        assertEquals(ResultSink.Format.COLUMNAR, ResultSink.Format.forFile("regret.bin"));
+    }
+
+    @Test
+    public void testRowLength() throws IOException {
+        ResultSink out = ResultSink.open(new ByteArrayOutputStream(), ResultSink.Format.TSV, "a", "b");
+        out.add(1);
+        try {
+            out.endRow();
+            fail("Should have rejected short row");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        out.add(2);
+        try {
+            out.add(3);
+            fail("Should have rejected long row");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testColumnar() throws IOException {
+        int n = 150000;
+        double[] a = new double[n];
+        double[] b = new double[n];
+        Random gen = new Random(2);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ResultSink out = ResultSink.open(bytes, ResultSink.Format.COLUMNAR, "i", "value")) {
+            for (int i = 0; i < n; i++) {
+                a[i] = i;
+                b[i] = gen.nextGaussian();
+                out.add(i).add(b[i], 3).endRow();
+            }
+        }
+        // 8 bytes per value plus a small header and three block headers
+        assertEquals(16 * n + 4 + 4 + 3 + 7 + 3 * 4, bytes.size());
+
+        Map<String, double[]> r = ColumnarSink.read(new ByteArrayInputStream(bytes.toByteArray()));
+        assertArrayEquals(new String[]{"i", "value"}, r.keySet().toArray(new String[2]));
+        assertArrayEquals(a, r.get("i"), 0);
+        assertArrayEquals(b, r.get("value"), 0);
+    }
+}
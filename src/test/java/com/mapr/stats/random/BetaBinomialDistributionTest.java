@@ -0,0 +1,53 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mapr.stats.random;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class BetaBinomialDistributionTest {
+    @Test
+    public void testNextMeans() {
+        Random gen = new Random(2);
+        // the first shape is tabulated, the second is not
+        for (int[] shape : new int[][]{{3, 5}, {40, 70}}) {
+            BetaBinomialDistribution bbd = new BetaBinomialDistribution(1, 1, gen, BetaQuantileCache.getShared());
+            for (int i = 1; i < shape[0]; i++) {
+                bbd.add(1);
+            }
+            for (int i = 1; i < shape[1]; i++) {
+                bbd.add(0);
+            }
+
+            int n = 20000;
+            double[] x = new double[n + 5];
+            bbd.nextMeans(x, 5, n);
+            Arrays.sort(x, 5, n + 5);
+            BetaDistribution bd = new BetaDistribution(shape[0], shape[1]);
+            for (double q : new double[]{0.01, 0.1, 0.5, 0.9, 0.99}) {
+                assertEquals(q, bd.cdf(x[5 + (int) (q * n)]), 0.01);
+            }
+            assertEquals(0, x[0], 0);
+            assertEquals(0, x[4], 0);
+        }
+    }
+}
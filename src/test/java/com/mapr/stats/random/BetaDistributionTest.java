@@ -17,9 +17,15 @@
 
 package com.mapr.stats.random;
 
+import org.apache.mahout.math.jet.random.AbstractContinousDistribution;
 import org.junit.Test;
 
+import java.util.Random;
+
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 public class BetaDistributionTest extends DistributionTest {
     @Test
@@ -34,6 +40,19 @@ public class BetaDistributionTest extends DistributionTest {
                 new double[]{0, 1.536, 1.500, 0.756, 0}, new BetaDistribution(2, 3));
     }
 
+    @Test
+    public void testLogPdf() {
+        for (double[] shape : new double[][]{{1, 1}, {2, 3}, {0.6, 20}, {30, 2}}) {
+            BetaDistribution bd = new BetaDistribution(shape[0], shape[1]);
+            for (double x = 0.05; x < 1; x += 0.05) {
+                assertEquals(Math.log(bd.pdf(x)), bd.logPdf(x), 1e-9);
+            }
+        }
+        // far too large for the beta function itself
+        assertEquals(0, Math.exp(new BetaDistribution(2000, 3000).logPdf(0.2)), 1e-10);
+        assertTrue(new BetaDistribution(2000, 3000).logPdf(0.4) > 0);
+    }
+
     @Test
     public void testCdf1() {
         double[] x = {0, 0.1, 0.5, 1};
@@ -61,4 +80,92 @@ public class BetaDistributionTest extends DistributionTest {
         checkDistribution(bd, String.format("alpha = %.1f, beta = %.1f", 2.0, 3.0), 1e-2);
         checkDistribution(new BetaDistribution(0.6, 20.0), String.format("alpha = %.1f, beta = %.1f", 0.6, 20.0), 1e-2);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testQuantile() {
+        for (double[] shape : new double[][]{{1, 1}, {2, 3}, {0.6, 20}, {30, 2}}) {
+            BetaDistribution bd = new BetaDistribution(shape[0], shape[1]);
+            for (double p = 0.01; p < 1; p += 0.01) {
+                assertEquals(p, bd.cdf(bd.quantile(p)), 1e-10);
+            }
+        }
+        assertEquals(0, new BetaDistribution(2, 3).quantile(0), 0);
+        assertEquals(1, new BetaDistribution(2, 3).quantile(1), 0);
+    }
+
+    @Test
+    public void testQuantileTables() {
+        BetaQuantileCache cache = new BetaQuantileCache(10, 256, 4);
+        assertTrue(cache.isTabulated(1, 1));
+        assertTrue(cache.isTabulated(10, 3));
+        assertFalse(cache.isTabulated(11, 3));
+        assertFalse(cache.isTabulated(1.5, 3));
+        assertFalse(cache.isTabulated(0.5, 3));
+
+        for (int[] shape : new int[][]{{1, 1}, {2, 1}, {1, 3}, {7, 4}}) {
+            double[] table = cache.table(shape[0], shape[1]);
+            assertEquals(257, table.length);
+            BetaDistribution bd = new BetaDistribution(shape[0], shape[1]);
+            for (int i = 0; i < table.length; i++) {
+                assertEquals(i / 256.0, bd.cdf(table[i]), 1e-10);
+            }
+        }
+
+        // the corners of the default grid have the most skewed and the narrowest tables
+        BetaQuantileCache shared = BetaQuantileCache.getShared();
+        int max = shared.getMaxShape();
+        for (int[] shape : new int[][]{{max, 1}, {1, max}, {max, max}, {max, 3}}) {
+            double[] table = shared.table(shape[0], shape[1]);
+            BetaDistribution bd = new BetaDistribution(shape[0], shape[1]);
+            for (int i = 0; i < table.length; i++) {
+                assertEquals(i / 1024.0, bd.cdf(table[i]), 1e-10);
+            }
+        }
+
+        // tables are shared until they are evicted
+        assertSame(cache.table(7, 4), cache.table(7, 4));
+        cache.table(3, 3);
+        assertEquals(4, cache.size());
+
+        // with room for every table, nothing is ever evicted
+        BetaQuantileCache grid = new BetaQuantileCache(4, 64, 16);
+        for (int alpha = 1; alpha <= 4; alpha++) {
+            for (int beta = 1; beta <= 4; beta++) {
+                assertEquals(65, grid.table(alpha, beta).length);
+            }
+        }
+        assertEquals(16, grid.size());
+        assertSame(grid.table(2, 3), grid.table(2, 3));
+        assertEquals(0.5, grid.table(3, 3)[32], 1e-12);
+
+        // single precision copies are shared as well
+        for (BetaQuantileCache c : new BetaQuantileCache[]{cache, grid}) {
+            float[] copy = c.floatTable(2, 3);
+            assertSame(copy, c.floatTable(2, 3));
+            double[] table = c.table(2, 3);
+            for (int i = 0; i < table.length; i++) {
+                assertEquals(table[i], copy[i], 1e-7);
+            }
+        }
+    }
+
+    @Test
+    public void testTableSampling() {
+        final Random gen = new Random(7);
+        for (final int[] shape : new int[][]{{1, 1}, {2, 1}, {1, 3}, {9, 2}}) {
+            final double[] table = BetaQuantileCache.getShared().table(shape[0], shape[1]);
+            final BetaDistribution bd = new BetaDistribution(shape[0], shape[1]);
+            checkDistribution(new AbstractContinousDistribution() {
+                @Override
+                public double nextDouble() {
+                    return BetaQuantileCache.nextDouble(table, gen);
+                }
+
+                @Override
+                public double cdf(double x) {
+                    return bd.cdf(x);
+                }
+            }, String.format("table alpha = %d, beta = %d", shape[0], shape[1]), 1e-2);
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one or more
+ * contributor license agreements.  See the NOTICE file distributed with
+ * this work for additional information regarding copyright ownership.
+ * The ASF licenses this file to You under the Apache License, Version 2.0
+ * (the "License"); you may not use this file except in compliance with
+ * the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.mapr.stats.random;
+
+import org.apache.mahout.math.jet.stat.Gamma;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FloatSamplerTest {
+    private static final double[] QUANTILES = {0.01, 0.05, 0.1, 0.25, 0.5, 0.75, 0.9, 0.95, 0.99};
+
+    @Test
+    public void testBeta() {
+        Random gen = new Random(1);
+        FloatSampler sampler = new FloatSampler(gen);
+        double[][] shapes = {{1, 1}, {2, 5}, {0.5, 0.5}, {40, 70}, {0.3, 20}, {1, 3000}};
+        for (double[] shape : shapes) {
+            // both samplers should put the same fraction of samples below each quantile
+            BetaDistribution bd = new BetaDistribution(shape[0], shape[1], gen);
+            int k = 40000;
+            double[] single = new double[k];
+            double[] full = new double[k];
+            for (int i = 0; i < k; i++) {
+                float x = sampler.nextBeta((float) shape[0], (float) shape[1]);
+                assertTrue(x >= 0 && x <= 1);
+                single[i] = bd.cdf(x);
+                full[i] = bd.cdf(bd.nextDouble());
+            }
+            Arrays.sort(single);
+            Arrays.sort(full);
+            for (double q : QUANTILES) {
+                int i = (int) (q * k);
+                String msg = String.format("beta(%.1f, %.1f), q = %.2f", shape[0], shape[1], q);
+                assertEquals(msg, q, single[i], 0.01);
+                assertEquals(msg, full[i], single[i], 0.01);
+            }
+        }
+    }
+
+    @Test
+    public void testGamma() {
+        FloatSampler sampler = new FloatSampler(new Random(2));
+        for (float shape : new float[]{0.2f, 0.5f, 1, 2.5f, 30}) {
+            int k = 100000;
+            double mean = 0;
+            double ss = 0;
+            for (int i = 0; i < k; i++) {
+                double x = sampler.nextGamma(shape);
+                double delta = x - mean;
+                mean += delta / (i + 1);
+                ss += delta * (x - mean);
+            }
+            // mean and variance are both equal to the shape
+            assertEquals(shape, mean, 4 * Math.sqrt(shape / k));
+            assertEquals(1, ss / (k - 1) / shape, 0.05);
+        }
+    }
+
+    @Test
+    public void testT() {
+        FloatSampler sampler = new FloatSampler(new Random(3));
+        for (float df : new float[]{1, 2, 5, 30, 1000}) {
+            int k = 40000;
+            double[] p = new double[k];
+            for (int i = 0; i < k; i++) {
+                p[i] = tCdf(sampler.nextT(df), df);
+            }
+            Arrays.sort(p);
+            for (double q : QUANTILES) {
+                assertEquals(String.format("df = %.0f, q = %.2f", df, q), q, p[(int) (q * k)], 0.01);
+            }
+        }
+    }
+
+    @Test
+    public void testGaussian() {
+        FloatSampler sampler = new FloatSampler(new Random(4));
+        int k = 100000;
+        double sum = 0;
+        double sum2 = 0;
+        for (int i = 0; i < k; i++) {
+            double x = sampler.nextGaussian();
+            sum += x;
+            sum2 += x * x;
+        }
+        assertEquals(0, sum / k, 0.015);
+        assertEquals(1, sum2 / k, 0.02);
+    }
+
+    private static double tCdf(double t, double df) {
+        double tail = 0.5 * Gamma.incompleteBeta(df / 2, 0.5, df / (df + t * t));
+        return t > 0 ? 1 - tail : tail;
+    }
+}